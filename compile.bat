@@ -9,7 +9,7 @@ cd /d %~dp0
 if not exist out mkdir out
 
 echo 正在编译Java文件...
-javac -encoding UTF-8 -d out ^
+javac -encoding UTF-8 --add-modules jdk.incubator.vector -d out ^
     src\common\*.java ^
     src\model\*.java ^
     src\server\request\*.java ^
@@ -17,6 +17,8 @@ javac -encoding UTF-8 -d out ^
     src\server\router\*.java ^
     src\server\handler\*.java ^
     src\server\mime\*.java ^
+    src\server\keepalive\*.java ^
+    src\server\nio\*.java ^
     src\server\*.java ^
     src\client\*.java
 
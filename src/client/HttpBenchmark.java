@@ -0,0 +1,904 @@
+package client;
+
+import common.ByteScanner;
+import common.HttpConstants;
+import common.HttpHeaders;
+import server.ExchangeRecycler;
+import server.ServerConfig;
+import server.handler.StaticFileHandler;
+import server.request.HttpRequest;
+import server.request.RequestDecoder;
+import server.request.RequestParser;
+import server.response.CannedResponse;
+import server.response.HttpResponse;
+import server.response.ResponseBuilder;
+import server.response.ResponseCompressor;
+import server.response.ResponseEncoder;
+import server.router.Router;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP性能测试工具
+ * 直接使用Socket发送请求，避免HttpClient的日志输出影响结果。
+ *
+ * 用法: java -cp out client.HttpBenchmark <mode> [options]
+ * - pipeline [host] [port] [connections] [seconds]
+ *   分别以流水线深度 1、4、16 发送 GET /api/status，输出每秒请求数
+ * - parser [iterations]
+ *   进程内对比 RequestParser 与 RequestDecoder，输出每个请求的耗时(ns)和分配字节数
+ * - exchange [iterations] [staticDir]
+ *   进程内完成 解码-路由-编码 的完整流程，对比关闭/开启对象复用时每个长连接请求的耗时和分配字节数；
+ *   用例为 /api/status（固定JSON）、/data.json（静态文件）和 /wp-login.php（扫描器常见的404）
+ * - upload [host] [port] [concurrency] [sizeMB]
+ *   并发向 /api/upload 上传 multipart 文件（默认 4 个 1024MB），输出每个上传的耗时和总吞吐量；
+ *   服务器需以足够大的 --max-body-size 启动
+ * - send [seconds]
+ *   进程内经回环连接写出 1KB、64KB、1MB 响应体，对比 合并复制(build) / 先头后体两次写 / 聚集写 三种方式的吞吐量和每个响应的分配字节数
+ * - scan [iterations]
+ *   对比标量与向量 ByteScanner 切分请求头（按LF分行、按冒号分名称和值）的耗时，
+ *   用例为普通浏览器请求头（约600字节）和带大量Cookie的请求头（约8KB）；
+ *   向量实现需以 --add-modules jdk.incubator.vector 运行
+ * - compress [iterations] [staticDir]
+ *   进程内请求 app.js、style.css、index.html，对比 不压缩 / 每次请求gzip压缩 / 缓存gzip版本 三种方式
+ *   每个响应的线上字节数和CPU时间(ns)
+ * - ttfb [host] [port] [rows] [delay]
+ *   分别以 mode=stream（分块流式）和 mode=buffer（整体生成）请求 /api/export，
+ *   输出首个响应体字节的到达时间(TTFB)、完整响应的耗时和响应体字节数；delay为服务端每生成1000行的等待毫秒数
+ * - download [host] [port] [path] [concurrency]
+ *   并发下载同一个静态文件（默认 10 个连接下载 /big.bin），输出每个下载的耗时和总吞吐量；
+ *   测试文件需预先放入资源目录，如 dd if=/dev/urandom of=resources/big.bin bs=1M count=1024
+ */
+public class HttpBenchmark {
+    private static final String DEFAULT_HOST = "localhost";
+    private static final int DEFAULT_PORT = 8080;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            printUsage();
+            return;
+        }
+
+        switch (args[0]) {
+            case "pipeline":
+                pipeline(arg(args, 1, DEFAULT_HOST), intArg(args, 2, DEFAULT_PORT),
+                        intArg(args, 3, 4), intArg(args, 4, 5));
+                break;
+            case "parser":
+                parser(intArg(args, 1, 1_000_000));
+                break;
+            case "exchange":
+                exchange(intArg(args, 1, 1_000_000), arg(args, 2, "resources"));
+                break;
+            case "upload":
+                upload(arg(args, 1, DEFAULT_HOST), intArg(args, 2, DEFAULT_PORT),
+                        intArg(args, 3, 4), intArg(args, 4, 1024));
+                break;
+            case "send":
+                send(intArg(args, 1, 2));
+                break;
+            case "scan":
+                scan(intArg(args, 1, 1_000_000));
+                break;
+            case "compress":
+                compress(intArg(args, 1, 2000), arg(args, 2, "resources"));
+                break;
+            case "ttfb":
+                ttfb(arg(args, 1, DEFAULT_HOST), intArg(args, 2, DEFAULT_PORT),
+                        intArg(args, 3, 100_000), intArg(args, 4, 5));
+                break;
+            case "download":
+                download(arg(args, 1, DEFAULT_HOST), intArg(args, 2, DEFAULT_PORT),
+                        arg(args, 3, "/big.bin"), intArg(args, 4, 10));
+                break;
+            default:
+                printUsage();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java -cp out client.HttpBenchmark <mode> [options]");
+        System.out.println("  pipeline [host] [port] [connections] [seconds]");
+        System.out.println("  parser [iterations]");
+        System.out.println("  exchange [iterations] [staticDir]");
+        System.out.println("  upload [host] [port] [concurrency] [sizeMB]");
+        System.out.println("  send [seconds]");
+        System.out.println("  scan [iterations]");
+        System.out.println("  compress [iterations] [staticDir]");
+        System.out.println("  ttfb [host] [port] [rows] [delay]");
+        System.out.println("  download [host] [port] [path] [concurrency]");
+    }
+
+    // ==================== 流水线 ====================
+
+    /**
+     * 流水线吞吐测试：每个连接一次写出depth个请求，再依次读取depth个响应
+     */
+    private static void pipeline(String host, int port, int connections, int seconds) throws Exception {
+        System.out.println("Pipeline benchmark: " + host + ":" + port + ", " + connections
+                + " connections, " + seconds + "s per depth");
+        System.out.println("depth    requests    req/s");
+
+        for (int depth : new int[] { 1, 4, 16 }) {
+            AtomicLong completed = new AtomicLong();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                Thread t = new Thread(() -> runPipeline(host, port, depth, deadline, completed));
+                threads.add(t);
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            long total = completed.get();
+            System.out.printf("%5d %11d %8.0f%n", depth, total, (double) total / seconds);
+        }
+    }
+
+    private static void runPipeline(String host, int port, int depth, long deadline, AtomicLong completed) {
+        byte[] batch = buildBatch(host, port, depth);
+        Socket socket = null;
+        try {
+            while (System.nanoTime() < deadline) {
+                if (socket == null) {
+                    socket = new Socket(host, port);
+                    socket.setTcpNoDelay(true);
+                }
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+
+                // 同一连接上循环发送批次，直到服务器要求关闭
+                boolean keepAlive = true;
+                while (keepAlive && System.nanoTime() < deadline) {
+                    out.write(batch);
+                    out.flush();
+                    for (int i = 0; i < depth; i++) {
+                        HttpResponseParser response = new HttpResponseParser();
+                        response.parse(in);
+                        completed.incrementAndGet();
+                        if (!response.isKeepAlive()) {
+                            keepAlive = false;
+                            break;
+                        }
+                    }
+                }
+                socket.close();
+                socket = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static byte[] buildBatch(String host, int port, int depth) {
+        String request = "GET /api/status HTTP/1.1\r\nHost: " + host + ":" + port + "\r\n\r\n";
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < depth; i++) {
+            byte[] bytes = request.getBytes();
+            baos.write(bytes, 0, bytes.length);
+        }
+        return baos.toByteArray();
+    }
+
+    // ==================== 请求解析 ====================
+
+    private static final String BROWSER_REQUEST = "GET /index.html?lang=zh&page=2 HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: zh-CN,zh;q=0.8,en-US;q=0.5,en;q=0.3\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Cookie: session=4f2a9c1e7b3d; theme=dark\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "Cache-Control: max-age=0\r\n"
+            + "\r\n";
+
+    private static final String FORM_REQUEST = "POST /api/login HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "Content-Type: application/x-www-form-urlencoded\r\n"
+            + "Content-Length: 31\r\n"
+            + "\r\n"
+            + "username=alice&password=secret1";
+
+    /**
+     * 解析器微基准：同一线程内反复解析同一请求，按线程分配计数统计每个请求的分配字节数。
+     * 两种解析器都只读取处理请求时常用的字段（路径、Host、Connection）。
+     */
+    private static void parser(int iterations) throws IOException {
+        System.out.println("Parser benchmark: " + iterations + " iterations per case");
+        System.out.println("case                 ns/req   bytes/req");
+        for (String[] c : new String[][] { { "browser-get", BROWSER_REQUEST }, { "form-post", FORM_REQUEST } }) {
+            byte[] bytes = c[1].getBytes(StandardCharsets.UTF_8);
+            // 预热，让JIT完成编译
+            runParser(bytes, iterations / 2, false);
+            runDecoder(bytes, iterations / 2, false);
+            // 各取三轮中最好的一轮，减少GC和机器抖动的影响
+            long[] parser = { Long.MAX_VALUE, Long.MAX_VALUE };
+            long[] decoder = { Long.MAX_VALUE, Long.MAX_VALUE };
+            for (int round = 0; round < 3; round++) {
+                runParser(bytes, iterations, true);
+                keepBest(parser);
+                runDecoder(bytes, iterations, true);
+                keepBest(decoder);
+            }
+            printParserResult(c[0] + "/parser", parser, iterations);
+            printParserResult(c[0] + "/decoder", decoder, iterations);
+        }
+    }
+
+    private static long measuredNanos;
+    private static long measuredBytes;
+    private static long sink;
+
+    private static void runParser(byte[] request, int iterations, boolean measure) throws IOException {
+        // 与连接级缓冲流的用法一致：一个BufferedInputStream反复读取
+        BufferedInputStream in = new BufferedInputStream(new RepeatingInputStream(request));
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            consume(RequestParser.parse(in));
+        }
+        record(start, bytes, measure);
+    }
+
+    private static void runDecoder(byte[] request, int iterations, boolean measure) throws IOException {
+        RequestDecoder decoder = new RequestDecoder();
+        ByteBuffer buffer = ByteBuffer.wrap(request);
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            buffer.rewind();
+            consume(decoder.decode(buffer));
+        }
+        record(start, bytes, measure);
+    }
+
+    private static void consume(HttpRequest request) {
+        sink += request.getPath().length() + request.getHeader(HttpHeaders.HOST).length()
+                + (request.isKeepAlive() ? 1 : 0);
+    }
+
+    private static void record(long start, long bytes, boolean measure) {
+        if (measure) {
+            measuredNanos = System.nanoTime() - start;
+            measuredBytes = allocatedBytes() - bytes;
+        }
+    }
+
+    private static void keepBest(long[] best) {
+        best[0] = Math.min(best[0], measuredNanos);
+        best[1] = Math.min(best[1], measuredBytes);
+    }
+
+    private static void printParserResult(String name, long[] best, int iterations) {
+        String allocated = best[1] < 0 ? "n/a" : String.valueOf(best[1] / iterations);
+        System.out.printf("%-18s %8d %11s%n", name, best[0] / iterations, allocated);
+    }
+
+    /**
+     * 当前线程累计分配的字节数；JVM不支持时返回-1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * 无限重复同一段字节的输入流
+     */
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] data;
+        private int position;
+
+        RepeatingInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            int b = data[position] & 0xFF;
+            position = (position + 1) % data.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position = (position + n) % data.length;
+            return n;
+        }
+    }
+
+    // ==================== 分隔符扫描 ====================
+
+    /**
+     * 分隔符扫描微基准：先在随机数据上核对两种实现的结果完全一致，再分别计时
+     */
+    private static void scan(int iterations) {
+        ByteScanner scalar = ByteScanner.scalar();
+        ByteScanner vector = ByteScanner.vector();
+        System.out.println("Scan benchmark: " + iterations + " iterations per case, active scanner: "
+                + ByteScanner.get().name());
+        if (vector == null) {
+            System.out.println("(jdk.incubator.vector not available, run with --add-modules jdk.incubator.vector)");
+        } else {
+            verifyScanners(scalar, vector);
+        }
+
+        byte[] browser = (BROWSER_REQUEST.substring(0, BROWSER_REQUEST.length() - 2)
+                + "Referer: http://localhost:8080/index.html?lang=zh&page=1\r\n"
+                + "Sec-Fetch-Dest: document\r\nSec-Fetch-Mode: navigate\r\nSec-Fetch-Site: same-origin\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] cookies = cookieRequest(8 * 1024).getBytes(StandardCharsets.US_ASCII);
+
+        System.out.println("case                  bytes   scalar ns   vector ns");
+        for (Object[] c : new Object[][] { { "browser-headers", browser }, { "cookie-headers", cookies } }) {
+            byte[] data = (byte[]) c[1];
+            long scalarNanos = timeScan(scalar, data, iterations);
+            String vectorNanos = vector == null ? "n/a" : String.valueOf(timeScan(vector, data, iterations));
+            System.out.printf("%-18s %8d %11d %11s%n", c[0], data.length, scalarNanos, vectorNanos);
+        }
+    }
+
+    /**
+     * 每次切分的耗时(ns)，取三轮中最好的一轮
+     */
+    private static long timeScan(ByteScanner scanner, byte[] data, int iterations) {
+        // 预热，让JIT完成编译
+        for (int i = 0; i < iterations / 2; i++) {
+            sink += splitHeaders(scanner, data);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += splitHeaders(scanner, data);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / iterations;
+    }
+
+    /**
+     * 与RequestDecoder相同的扫描方式：逐行找LF，再在行内找冒号
+     */
+    private static int splitHeaders(ByteScanner scanner, byte[] data) {
+        int result = 0;
+        int lineStart = 0;
+        int lf;
+        while ((lf = scanner.indexOf(data, lineStart, data.length, (byte) '\n')) != -1) {
+            result += scanner.indexOf(data, lineStart, lf, (byte) ':');
+            lineStart = lf + 1;
+        }
+        return result;
+    }
+
+    private static void verifyScanners(ByteScanner scalar, ByteScanner vector) {
+        Random random = new Random(42);
+        byte[] data = new byte[1024];
+        for (int n = 0; n < 100_000; n++) {
+            // 稀疏地放置目标字节，覆盖各种起止位置和向量尾部
+            for (int i = 0; i < data.length; i++) {
+                data[i] = random.nextInt(64) == 0 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+            }
+            int from = random.nextInt(data.length + 1);
+            int to = from + random.nextInt(data.length - from + 1);
+            int expected = scalar.indexOf(data, from, to, (byte) '\n');
+            int actual = vector.indexOf(data, from, to, (byte) '\n');
+            if (expected != actual) {
+                throw new IllegalStateException("Scanner mismatch at [" + from + ", " + to + "): scalar="
+                        + expected + ", vector=" + actual);
+            }
+        }
+        System.out.println("scalar and vector results match on 100000 random inputs");
+    }
+
+    /**
+     * 带大量第三方Cookie的请求头，总长度约为size字节
+     */
+    private static String cookieRequest(int size) {
+        StringBuilder request = new StringBuilder(BROWSER_REQUEST.substring(0, BROWSER_REQUEST.length() - 2));
+        request.append("Cookie: ");
+        for (int i = 0; request.length() < size - 64; i++) {
+            request.append(i == 0 ? "" : "; ").append("_ga_").append(Integer.toHexString(0x1000 + i))
+                    .append("=GS1.1.1700000000.12.1.1700000123.0.0.").append(i);
+        }
+        request.append("\r\n\r\n");
+        return request.toString();
+    }
+
+    // ==================== 请求/响应对象复用 ====================
+
+    /**
+     * 在同一线程内模拟长连接：解码、路由、设置连接头、编码写出，按请求统计分配字节数。
+     * JSON路由与 /api/status 相同；静态路由读取staticDir下的 data.json；/wp-login.php 不存在，返回404。
+     */
+    private static void exchange(int iterations, String staticDir) throws IOException {
+        Router router = new Router();
+        CannedResponse status = CannedResponse.json("{\"status\":\"running\",\"port\":8080}");
+        router.get("/api/status", request -> ResponseBuilder.canned(status));
+        router.setDefaultHandler(new StaticFileHandler(staticDir));
+
+        System.out.println("Exchange benchmark: " + iterations + " iterations per case");
+        System.out.println("case                 ns/req   bytes/req");
+        for (String path : new String[] { "/api/status", "/data.json", "/wp-login.php" }) {
+            byte[] bytes = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            for (ServerConfig.Recycle mode : new ServerConfig.Recycle[] { ServerConfig.Recycle.OFF,
+                    ServerConfig.Recycle.ON }) {
+                long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+                runExchange(router, bytes, mode, iterations / 2);
+                for (int round = 0; round < 3; round++) {
+                    long bytesBefore = allocatedBytes();
+                    long start = System.nanoTime();
+                    runExchange(router, bytes, mode, iterations);
+                    measuredNanos = System.nanoTime() - start;
+                    measuredBytes = allocatedBytes() - bytesBefore;
+                    keepBest(best);
+                }
+                printParserResult(path + "/" + mode.name().toLowerCase(), best, iterations);
+            }
+        }
+    }
+
+    private static void runExchange(Router router, byte[] request, ServerConfig.Recycle mode, int iterations)
+            throws IOException {
+        RequestDecoder decoder = new RequestDecoder();
+        ExchangeRecycler recycler = new ExchangeRecycler(mode, decoder);
+        ByteBuffer buffer = ByteBuffer.wrap(request);
+        ResponseEncoder encoder = new ResponseEncoder();
+        OutputStream out = OutputStream.nullOutputStream();
+        for (int i = 0; i < iterations; i++) {
+            buffer.rewind();
+            HttpRequest httpRequest = decoder.decode(buffer);
+            HttpResponse response;
+            recycler.beforeHandle();
+            try {
+                response = router.route(httpRequest);
+            } finally {
+                recycler.afterHandle();
+            }
+            response.setKeepAlive(httpRequest.isKeepAlive(), 60, 99);
+            encoder.writeTo(response, out);
+            recycler.release(httpRequest, response);
+        }
+    }
+
+    // ==================== 响应压缩 ====================
+
+    /**
+     * 压缩测试：三个路由分别为 不压缩、静态文件处理器不缓存（由Router每次压缩）、静态文件处理器缓存压缩版本；
+     * 后两种请求带 Accept-Encoding: gzip, deflate。统计每个响应写出的字节数和当前线程的CPU时间。
+     */
+    private static void compress(int iterations, String staticDir) throws IOException {
+        ResponseCompressor compressor = new ResponseCompressor(true, ResponseCompressor.DEFAULT_MIN_SIZE);
+        Router identity = new Router();
+        identity.setDefaultHandler(new StaticFileHandler(staticDir));
+        Router perRequest = new Router().setCompressor(compressor);
+        perRequest.setDefaultHandler(new StaticFileHandler(staticDir));
+        Router cached = new Router().setCompressor(compressor);
+        cached.setDefaultHandler(new StaticFileHandler(staticDir, compressor));
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        System.out.println("Compression benchmark: " + iterations + " iterations per case, staticDir=" + staticDir);
+        System.out.println("case                        wire bytes   cpu ns/req");
+        for (String path : new String[] { "/app.js", "/style.css", "/index.html" }) {
+            byte[] plain = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            byte[] gzip = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip, deflate\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            Object[][] cases = { { "identity", identity, plain }, { "gzip/per-request", perRequest, gzip },
+                    { "gzip/cached", cached, gzip } };
+            for (Object[] c : cases) {
+                Router router = (Router) c[1];
+                byte[] request = (byte[]) c[2];
+                // 预热，同时让缓存版本生成
+                runCompress(router, request, iterations / 4);
+                long bestCpu = Long.MAX_VALUE;
+                long wireBytes = 0;
+                for (int round = 0; round < 3; round++) {
+                    long cpuBefore = bean.getCurrentThreadCpuTime();
+                    wireBytes = runCompress(router, request, iterations) / iterations;
+                    bestCpu = Math.min(bestCpu, bean.getCurrentThreadCpuTime() - cpuBefore);
+                }
+                System.out.printf("%-11s %-16s %10d %12d%n", path, c[0], wireBytes, bestCpu / iterations);
+            }
+        }
+    }
+
+    /**
+     * @return 写出的总字节数
+     */
+    private static long runCompress(Router router, byte[] request, int iterations) throws IOException {
+        RequestDecoder decoder = new RequestDecoder();
+        ByteBuffer buffer = ByteBuffer.wrap(request);
+        ResponseEncoder encoder = new ResponseEncoder();
+        long[] written = { 0 };
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+        for (int i = 0; i < iterations; i++) {
+            buffer.rewind();
+            HttpRequest httpRequest = decoder.decode(buffer);
+            HttpResponse response = router.route(httpRequest);
+            response.setKeepAlive(true, 60, 99);
+            encoder.writeTo(response, out);
+        }
+        return written[0];
+    }
+
+    // ==================== 响应写出 ====================
+
+    /**
+     * 响应写出测试：服务端一侧是ServerSocketChannel接受的连接（与服务器相同），另一侧的线程读取并丢弃。
+     * 每种方式按固定时长反复写出同一个响应，每个响应后flush。
+     * - copy：build()把响应头和响应体复制到一个新数组再写出
+     * - stream：先写响应头再直接写响应体数组（没有底层通道时的写法）
+     * - gather：响应头和响应体一次聚集写到SocketChannel
+     */
+    private static void send(int seconds) throws Exception {
+        System.out.println("Send benchmark: " + seconds + "s per case over loopback");
+        System.out.println("case                 MB/s   bytes/resp");
+        for (int size : new int[] { 1024, 64 * 1024, 1024 * 1024 }) {
+            byte[] body = new byte[size];
+            Arrays.fill(body, (byte) 'x');
+            HttpResponse response = ResponseBuilder.binary(body, "application/octet-stream");
+            for (String mode : new String[] { "copy", "stream", "gather" }) {
+                // 预热一轮，再取正式一轮的结果
+                runSend(response, mode, Math.max(1, seconds / 2));
+                double throughput = runSend(response, mode, seconds);
+                String name = (size >= 1024 * 1024 ? size / (1024 * 1024) + "MB" : size / 1024 + "KB") + "/" + mode;
+                System.out.printf("%-16s %9.1f %12d%n", name, throughput, measuredBytes);
+            }
+        }
+    }
+
+    /**
+     * @return 响应体吞吐量(MB/s)；每个响应的分配字节数写入measuredBytes
+     */
+    private static double runSend(HttpResponse response, String mode, int seconds) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Socket client = new Socket(InetAddress.getLoopbackAddress(), server.socket().getLocalPort());
+            Thread drain = new Thread(() -> {
+                byte[] buffer = new byte[256 * 1024];
+                try (InputStream in = client.getInputStream()) {
+                    while (in.read(buffer) != -1) {
+                        // 丢弃
+                    }
+                } catch (IOException e) {
+                    // 连接关闭
+                }
+            });
+            drain.start();
+
+            try (SocketChannel channel = server.accept()) {
+                OutputStream out = new BufferedOutputStream(channel.socket().getOutputStream(),
+                        HttpConstants.BUFFER_SIZE);
+                ResponseEncoder encoder = new ResponseEncoder();
+                long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+                long count = 0;
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 16; i++) {
+                        if ("copy".equals(mode)) {
+                            out.write(response.build());
+                        } else if ("stream".equals(mode)) {
+                            encoder.writeTo(response, out);
+                        } else {
+                            encoder.writeTo(response, out, channel);
+                        }
+                        out.flush();
+                    }
+                    count += 16;
+                }
+                long elapsed = System.nanoTime() - start;
+                measuredBytes = (allocatedBytes() - bytes) / count;
+                return count * (double) response.getBody().length / 1048576.0 / (elapsed / 1e9);
+            } finally {
+                client.close();
+                drain.join();
+            }
+        }
+    }
+
+    // ==================== 首字节时间 ====================
+
+    private static final int TTFB_ROUNDS = 3;
+
+    /**
+     * 流式与整体生成的导出接口对比：每轮新建连接，记录首个响应体字节和完整响应的到达时间，取最好的一轮
+     */
+    private static void ttfb(String host, int port, int rows, int delay) throws IOException {
+        System.out.println("TTFB benchmark: " + host + ":" + port + ", GET /api/export rows=" + rows
+                + " delay=" + delay + "ms/1000 rows");
+        for (String mode : new String[] { "stream", "buffer" }) {
+            String target = "/api/export?rows=" + rows + "&delay=" + delay + "&mode=" + mode;
+            long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, 0 };
+            for (int round = 0; round < TTFB_ROUNDS; round++) {
+                long[] result = runTtfb(host, port, target);
+                best[0] = Math.min(best[0], result[0]);
+                best[1] = Math.min(best[1], result[1]);
+                best[2] = result[2];
+            }
+            System.out.printf("%-7s ttfb %9.2f ms, total %9.2f ms, %,d bytes on the wire%n", mode,
+                    best[0] / 1e6, best[1] / 1e6, best[2]);
+        }
+    }
+
+    /**
+     * @return {首个响应体字节的纳秒数, 连接关闭的纳秒数, 响应头之后收到的字节数（含分块帧）}
+     */
+    private static long[] runTtfb(String host, int port, String target) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[64 * 1024];
+            long start = System.nanoTime();
+            socket.getOutputStream().write(("GET " + target + " HTTP/1.1\r\n"
+                    + "Host: " + host + ":" + port + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            // 逐段读取，匹配响应头结尾的CRLFCRLF（可能跨越两次读取）
+            int matched = 0;
+            long firstByte = -1;
+            long bodyBytes = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                int bodyStart = 0;
+                if (matched < 4) {
+                    bodyStart = n;
+                    for (int i = 0; i < n; i++) {
+                        byte expected = matched % 2 == 0 ? (byte) '\r' : (byte) '\n';
+                        matched = buffer[i] == expected ? matched + 1 : (buffer[i] == '\r' ? 1 : 0);
+                        if (matched == 4) {
+                            bodyStart = i + 1;
+                            break;
+                        }
+                    }
+                }
+                if (matched == 4 && n > bodyStart) {
+                    if (firstByte < 0) {
+                        firstByte = System.nanoTime() - start;
+                    }
+                    bodyBytes += n - bodyStart;
+                }
+            }
+            long total = System.nanoTime() - start;
+            return new long[] { firstByte < 0 ? total : firstByte, total, bodyBytes };
+        }
+    }
+
+    // ==================== 文件上传 ====================
+
+    private static final String UPLOAD_BOUNDARY = "----HttpBenchmarkBoundary7MA4YWxk";
+
+    /**
+     * 上传测试：concurrency个连接同时上传sizeMB大小的文件，文件内容边生成边发送，客户端不占用大块内存
+     */
+    private static void upload(String host, int port, int concurrency, int sizeMB) throws Exception {
+        long size = sizeMB * 1024L * 1024L;
+        System.out.println("Upload benchmark: " + host + ":" + port + ", " + concurrency
+                + " concurrent uploads of " + sizeMB + "MB");
+
+        AtomicLong uploaded = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            int index = i;
+            Thread t = new Thread(() -> {
+                try {
+                    long begin = System.nanoTime();
+                    HttpResponseParser response = runUpload(host, port, index, size);
+                    double seconds = (System.nanoTime() - begin) / 1e9;
+                    String body = response.getBodyAsString();
+                    boolean complete = response.getStatusCode() == 200 && body.contains("\"size\":" + size + ",");
+                    if (complete) {
+                        uploaded.addAndGet(size);
+                    }
+                    System.out.printf("upload #%d: %d %s, %.1fs%s%n", index, response.getStatusCode(),
+                            response.getReasonPhrase(), seconds, complete ? "" : " " + body);
+                } catch (IOException e) {
+                    // 超过服务器 --max-body-size 时服务器回复413后关闭连接，客户端写入时会收到RST
+                    System.err.println("upload #" + index + " failed: " + e.getMessage()
+                            + " (is the server's --max-body-size large enough?)");
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("total: %d MB in %.1fs, %.1f MB/s%n", uploaded.get() >> 20, seconds,
+                uploaded.get() / 1048576.0 / seconds);
+    }
+
+    private static HttpResponseParser runUpload(String host, int port, int index, long size) throws IOException {
+        byte[] head = ("--" + UPLOAD_BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+                + "benchmark upload " + index + "\r\n"
+                + "--" + UPLOAD_BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"upload-" + index + ".bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + UPLOAD_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        try (Socket socket = new Socket(host, port)) {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            out.write(("POST /api/upload HTTP/1.1\r\n"
+                    + "Host: " + host + ":" + port + "\r\n"
+                    + "Content-Type: multipart/form-data; boundary=" + UPLOAD_BOUNDARY + "\r\n"
+                    + "Content-Length: " + (head.length + size + tail.length) + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(head);
+
+            // 文件内容：重复的可打印字节，不包含分隔符
+            byte[] chunk = new byte[64 * 1024];
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = (byte) ('a' + i % 26);
+            }
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(chunk.length, remaining);
+                out.write(chunk, 0, n);
+                remaining -= n;
+            }
+            out.write(tail);
+            out.flush();
+
+            HttpResponseParser response = new HttpResponseParser();
+            response.parse(new BufferedInputStream(socket.getInputStream()));
+            return response;
+        }
+    }
+
+    // ==================== 文件下载 ====================
+
+    /**
+     * 下载测试：concurrency个连接同时下载同一个文件，响应体读入固定缓冲区后丢弃
+     */
+    private static void download(String host, int port, String path, int concurrency) throws Exception {
+        System.out.println("Download benchmark: " + host + ":" + port + ", " + concurrency
+                + " concurrent downloads of " + path);
+
+        AtomicLong downloaded = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            int index = i;
+            Thread t = new Thread(() -> {
+                try {
+                    long begin = System.nanoTime();
+                    long[] result = runDownload(host, port, path);
+                    double seconds = (System.nanoTime() - begin) / 1e9;
+                    boolean complete = result[0] == 200 && result[1] == result[2];
+                    if (complete) {
+                        downloaded.addAndGet(result[2]);
+                    }
+                    System.out.printf("download #%d: %d, %d MB in %.1fs, %.1f MB/s%s%n", index, result[0],
+                            result[2] >> 20, seconds, result[2] / 1048576.0 / seconds,
+                            complete ? "" : " (incomplete, Content-Length " + result[1] + ")");
+                } catch (IOException e) {
+                    System.err.println("download #" + index + " failed: " + e.getMessage());
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("total: %d MB in %.1fs, %.1f MB/s%n", downloaded.get() >> 20, seconds,
+                downloaded.get() / 1048576.0 / seconds);
+    }
+
+    /**
+     * @return {状态码, Content-Length（没有时为-1）, 收到的响应体字节数}
+     */
+    private static long[] runDownload(String host, int port, String path) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\n"
+                    + "Host: " + host + ":" + port + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            // 响应头逐行读取，响应体按块读取后丢弃
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 256 * 1024);
+            String statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new IOException("Connection closed before the response");
+            }
+            long status = Long.parseLong(statusLine.split(" ")[1]);
+            long contentLength = -1;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+                    contentLength = Long.parseLong(line.substring(colon + 1).trim());
+                }
+            }
+
+            byte[] buffer = new byte[256 * 1024];
+            long received = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                received += n;
+            }
+            return new long[] { status, contentLength, received };
+        }
+    }
+
+    /**
+     * 读取一行（去掉CRLF）；连接已关闭时返回null
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int last = sb.length() - 1;
+                return last >= 0 && sb.charAt(last) == '\r' ? sb.substring(0, last) : sb.toString();
+            }
+            sb.append((char) b);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    // ==================== 工具方法 ====================
+
+    private static String arg(String[] args, int index, String defaultValue) {
+        return args.length > index ? args[index] : defaultValue;
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+}
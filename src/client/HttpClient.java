@@ -1,9 +1,11 @@
 package client;
 
+import common.HttpHeaders;
 import common.HttpMethod;
 
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
@@ -16,16 +18,19 @@ import java.util.Map;
  * 功能特性：
  * - 支持GET和POST请求
  * - 支持301/302重定向自动跟随
- * - 支持304缓存机制
+ * - 支持304缓存机制（按缓存的ETag和Last-Modified发送If-None-Match和If-Modified-Since）
  * - 支持长连接复用
+ * - 可选 Expect: 100-continue：先发请求头，等服务器同意后再发请求体
  */
 public class HttpClient {
     private static final int DEFAULT_TIMEOUT = 30000; // 30秒
     private static final int MAX_REDIRECTS = 10; // 最大重定向次数
+    private static final int CONTINUE_TIMEOUT = 1000; // 等待100 Continue的时间，超时后照常发送请求体
 
     private int timeout;
     private int maxRedirects;
     private boolean followRedirects;
+    private boolean expectContinue;
     private Map<String, CacheEntry> cache; // 简单的响应缓存
 
     // 连接复用
@@ -126,7 +131,13 @@ public class HttpClient {
             if (headers == null) {
                 headers = new HashMap<>();
             }
-            headers.put("If-Modified-Since", cacheEntry.lastModified);
+            // 持有ETag时同时发送If-None-Match，服务器优先按它判断
+            if (cacheEntry.etag != null) {
+                headers.put(HttpHeaders.IF_NONE_MATCH, cacheEntry.etag);
+            }
+            if (cacheEntry.lastModified != null) {
+                headers.put(HttpHeaders.IF_MODIFIED_SINCE, cacheEntry.lastModified);
+            }
         }
 
         // 建立连接（复用或新建）
@@ -149,18 +160,24 @@ public class HttpClient {
             requestBuilder.body(body);
         }
 
-        String requestStr = requestBuilder.build();
+        HttpResponseParser response;
+        if (expectContinue && body != null && !body.isEmpty()) {
+            requestBuilder.header(HttpHeaders.EXPECT, HttpHeaders.CONTINUE_VALUE);
+            response = sendExpectingContinue(requestBuilder);
+        } else {
+            String requestStr = requestBuilder.build();
 
-        // 发送请求
-        System.out.println(">>> Sending request:");
-        System.out.println(requestStr);
+            // 发送请求
+            System.out.println(">>> Sending request:");
+            System.out.println(requestStr);
 
-        outputStream.write(requestStr.getBytes("UTF-8"));
-        outputStream.flush();
+            outputStream.write(requestStr.getBytes("UTF-8"));
+            outputStream.flush();
 
-        // 接收响应
-        HttpResponseParser response = new HttpResponseParser();
-        response.parse(inputStream);
+            // 接收响应
+            response = new HttpResponseParser();
+            response.parse(inputStream);
+        }
 
         System.out.println("<<< Received response:");
         System.out.println(response);
@@ -176,11 +193,12 @@ public class HttpClient {
             return response; // 这里简化处理，返回304响应
         }
 
-        // 缓存响应（如果有Last-Modified头）
+        // 缓存响应（如果有Last-Modified或ETag头）
         if (method == HttpMethod.GET && response.getStatusCode() == 200) {
             String lastModified = response.getLastModified();
-            if (lastModified != null) {
-                cache.put(url, new CacheEntry(lastModified, response.getBodyAsString()));
+            String etag = response.getETag();
+            if (lastModified != null || etag != null) {
+                cache.put(url, new CacheEntry(lastModified, etag, response.getBodyAsString()));
                 System.out.println("[Cache] Cached response for: " + url);
             }
         }
@@ -223,6 +241,65 @@ public class HttpClient {
         return response;
     }
 
+    /**
+     * 先发送请求头，收到100 Continue（或等待超时）后再发送请求体；
+     * 服务器直接给出最终响应时不再发送请求体
+     */
+    private HttpResponseParser sendExpectingContinue(HttpRequestBuilder requestBuilder) throws IOException {
+        String head = requestBuilder.buildHead();
+        System.out.println(">>> Sending request headers:");
+        System.out.println(head);
+        outputStream.write(head.getBytes("UTF-8"));
+        outputStream.flush();
+
+        HttpResponseParser interim = awaitInterimResponse();
+        if (interim != null && !interim.isInformational()) {
+            System.out.println("[Expect] Server answered " + interim.getStatusCode() + " before the body was sent");
+            // 服务器可能还在等待请求体，连接不再复用
+            closeConnection();
+            return interim;
+        }
+        System.out.println(interim != null ? "[Expect] 100 Continue, sending body"
+                : "[Expect] No interim response within " + CONTINUE_TIMEOUT + "ms, sending body");
+
+        outputStream.write(requestBuilder.getBodyBytes());
+        outputStream.flush();
+
+        // 等待超时后服务器仍可能发出迟到的100 Continue（阻塞引擎在处理器第一次读取请求体时才发送），
+        // 最终响应之前的1xx响应都要跳过（RFC 9110 15.2），否则连接上的响应会错位
+        HttpResponseParser response = new HttpResponseParser();
+        response.parse(inputStream);
+        while (response.isInformational()) {
+            System.out.println("[Expect] Skipping interim response " + response.getStatusCode());
+            response = new HttpResponseParser();
+            response.parse(inputStream);
+        }
+        return response;
+    }
+
+    /**
+     * 在CONTINUE_TIMEOUT内等待服务器的响应（100 Continue或最终响应）
+     *
+     * @return 响应；超时返回null
+     */
+    private HttpResponseParser awaitInterimResponse() throws IOException {
+        currentSocket.setSoTimeout(CONTINUE_TIMEOUT);
+        try {
+            inputStream.mark(1);
+            if (inputStream.read() == -1) {
+                throw new IOException("Connection closed while waiting for 100 Continue");
+            }
+            inputStream.reset();
+        } catch (SocketTimeoutException e) {
+            return null;
+        } finally {
+            currentSocket.setSoTimeout(timeout);
+        }
+        HttpResponseParser response = new HttpResponseParser();
+        response.parse(inputStream);
+        return response;
+    }
+
     /**
      * 确保连接可用（复用或新建）
      */
@@ -278,6 +355,13 @@ public class HttpClient {
         this.followRedirects = followRedirects;
     }
 
+    /**
+     * 设置是否对带请求体的请求使用 Expect: 100-continue
+     */
+    public void setExpectContinue(boolean expectContinue) {
+        this.expectContinue = expectContinue;
+    }
+
     /**
      * 设置最大重定向次数
      */
@@ -297,10 +381,12 @@ public class HttpClient {
      */
     private static class CacheEntry {
         String lastModified;
+        String etag;
         String content;
 
-        CacheEntry(String lastModified, String content) {
+        CacheEntry(String lastModified, String etag, String content) {
             this.lastModified = lastModified;
+            this.etag = etag;
             this.content = content;
         }
     }
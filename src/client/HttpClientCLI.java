@@ -69,6 +69,11 @@ public class HttpClientCLI {
                 case "help":
                     printHelp();
                     break;
+                case "expect":
+                    boolean enabled = !args.equalsIgnoreCase("off");
+                    client.setExpectContinue(enabled);
+                    System.out.println("Expect: 100-continue " + (enabled ? "enabled" : "disabled") + ".");
+                    break;
                 case "clear":
                     client.clearCache();
                     System.out.println("Cache cleared.");
@@ -269,6 +274,7 @@ public class HttpClientCLI {
         System.out.println("  register      - Register a new user");
         System.out.println("  login         - Login with username/password");
         System.out.println("  test          - Run automated tests");
+        System.out.println("  expect on|off - Send POST bodies with Expect: 100-continue");
         System.out.println("  clear         - Clear response cache");
         System.out.println("  help          - Show this help");
         System.out.println("  exit/quit     - Exit the client");
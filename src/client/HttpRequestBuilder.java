@@ -114,6 +114,17 @@ public class HttpRequestBuilder {
      * 构建请求报文字符串
      */
     public String build() {
+        String head = buildHead();
+        if (body != null && !body.isEmpty()) {
+            return head + body;
+        }
+        return head;
+    }
+
+    /**
+     * 只构建请求行和请求头（含结尾空行），请求体另行发送（如 Expect: 100-continue）
+     */
+    public String buildHead() {
         StringBuilder request = new StringBuilder();
 
         // 构建URI（包含查询参数）
@@ -149,14 +160,23 @@ public class HttpRequestBuilder {
         // 空行
         request.append("\r\n");
 
-        // 请求体
-        if (body != null && !body.isEmpty()) {
-            request.append(body);
-        }
-
         return request.toString();
     }
 
+    /**
+     * 请求体的UTF-8字节；没有请求体时返回空数组
+     */
+    public byte[] getBodyBytes() {
+        if (body == null) {
+            return new byte[0];
+        }
+        try {
+            return body.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return body.getBytes();
+        }
+    }
+
     /**
      * 构建URI
      */
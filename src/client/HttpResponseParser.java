@@ -1,9 +1,15 @@
 package client;
 
+import common.ByteScanner;
+import common.HeaderTable;
+import common.HttpHeaders;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,15 +17,22 @@ import java.util.Map;
  * 解析服务器返回的HTTP响应
  */
 public class HttpResponseParser {
+    // 单行（状态行、响应头、chunk大小行）的最大长度
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    // 查找分隔符（CR/LF/冒号/空格）的实现，见ByteScanner
+    private static final ByteScanner SCANNER = ByteScanner.get();
+
     private String httpVersion;
     private int statusCode;
     private String reasonPhrase;
-    private Map<String, String> headers;
+    private final HeaderTable headers;
     private byte[] body;
     private String rawResponse;
+    // 状态行、响应头和chunk大小行共用的行缓冲区
+    private byte[] line = new byte[256];
 
     public HttpResponseParser() {
-        this.headers = new HashMap<>();
+        this.headers = new HeaderTable();
     }
 
     /**
@@ -27,21 +40,20 @@ public class HttpResponseParser {
      */
     public void parse(InputStream inputStream) throws IOException {
         // 读取状态行
-        String statusLine = readLine(inputStream);
-        if (statusLine == null || statusLine.isEmpty()) {
+        int length = readLine(inputStream);
+        if (length <= 0) {
             throw new IOException("Empty response");
         }
 
-        parseStatusLine(statusLine);
+        parseStatusLine(length);
 
         // 读取响应头
-        String headerLine;
-        while ((headerLine = readLine(inputStream)) != null && !headerLine.isEmpty()) {
-            int colonIndex = headerLine.indexOf(':');
+        while ((length = readLine(inputStream)) > 0) {
+            int colonIndex = SCANNER.indexOf(line, 0, length, (byte) ':');
             if (colonIndex != -1) {
-                String name = headerLine.substring(0, colonIndex).trim();
-                String value = headerLine.substring(colonIndex + 1).trim();
-                headers.put(name, value);
+                String name = new String(line, 0, colonIndex, StandardCharsets.UTF_8).trim();
+                String value = new String(line, colonIndex + 1, length - colonIndex - 1, StandardCharsets.UTF_8).trim();
+                headers.add(name, value);
             }
         }
 
@@ -64,49 +76,95 @@ public class HttpResponseParser {
     }
 
     /**
-     * 解析状态行
+     * 解析行缓冲区中的状态行
      */
-    private void parseStatusLine(String statusLine) throws IOException {
+    private void parseStatusLine(int length) throws IOException {
         // HTTP/1.1 200 OK
-        String[] parts = statusLine.split(" ", 3);
-        if (parts.length < 2) {
-            throw new IOException("Invalid status line: " + statusLine);
+        int firstSpace = SCANNER.indexOf(line, 0, length, (byte) ' ');
+        if (firstSpace == -1) {
+            throw new IOException("Invalid status line: " + lineString(length));
         }
+        int secondSpace = SCANNER.indexOf(line, firstSpace + 1, length, (byte) ' ');
+        int codeEnd = secondSpace != -1 ? secondSpace : length;
 
-        this.httpVersion = parts[0];
+        this.httpVersion = new String(line, 0, firstSpace, StandardCharsets.UTF_8);
+        String code = new String(line, firstSpace + 1, codeEnd - firstSpace - 1, StandardCharsets.UTF_8);
         try {
-            this.statusCode = Integer.parseInt(parts[1]);
+            this.statusCode = Integer.parseInt(code);
         } catch (NumberFormatException e) {
-            throw new IOException("Invalid status code: " + parts[1]);
+            throw new IOException("Invalid status code: " + code);
         }
-        this.reasonPhrase = parts.length > 2 ? parts[2] : "";
+        this.reasonPhrase = secondSpace != -1
+                ? new String(line, secondSpace + 1, length - secondSpace - 1, StandardCharsets.UTF_8) : "";
     }
 
     /**
-     * 读取一行（以CRLF结尾）
+     * 读取一行（以CRLF结尾）到行缓冲区，返回不含CRLF的长度；流已结束且没有数据时返回-1。
+     * 支持mark的流（如BufferedInputStream）按块读取并用ByteScanner查找LF，
+     * 之后回退到mark位置只消费这一行，同一连接上的后续响应不受影响；其他流逐字节读取。
      */
-    private String readLine(InputStream is) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    private int readLine(InputStream is) throws IOException {
+        if (!is.markSupported()) {
+            return readLineByByte(is);
+        }
+
+        is.mark(MAX_LINE_LENGTH);
+        int filled = 0;
+        int scanned = 0;
+        while (true) {
+            if (filled == line.length) {
+                if (filled >= MAX_LINE_LENGTH) {
+                    throw new IOException("Response line too long");
+                }
+                line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+            }
+            int read = is.read(line, filled, line.length - filled);
+            if (read == -1) {
+                // 流结束时不完整的行原样返回
+                return filled > 0 ? filled : -1;
+            }
+            filled += read;
+
+            int lf;
+            while ((lf = SCANNER.indexOf(line, scanned, filled, (byte) '\n')) != -1) {
+                scanned = lf + 1;
+                if (lf > 0 && line[lf - 1] == '\r') {
+                    // 回退后只消费到LF为止，缓冲区中已读的字节与重新读到的相同
+                    is.reset();
+                    is.readNBytes(line, 0, lf + 1);
+                    return lf - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * 逐字节读取一行（不支持mark的流）
+     */
+    private int readLineByByte(InputStream is) throws IOException {
+        int length = 0;
         int prevByte = -1;
         int currByte;
 
         while ((currByte = is.read()) != -1) {
             if (prevByte == '\r' && currByte == '\n') {
-                byte[] bytes = baos.toByteArray();
-                if (bytes.length > 0) {
-                    return new String(bytes, 0, bytes.length - 1, "UTF-8");
+                return length - 1;
+            }
+            if (length == line.length) {
+                if (length >= MAX_LINE_LENGTH) {
+                    throw new IOException("Response line too long");
                 }
-                return "";
+                line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
             }
-            baos.write(currByte);
+            line[length++] = (byte) currByte;
             prevByte = currByte;
         }
 
-        if (baos.size() == 0) {
-            return null;
-        }
+        return length > 0 ? length : -1;
+    }
 
-        return new String(baos.toByteArray(), "UTF-8");
+    private String lineString(int length) {
+        return new String(line, 0, length, StandardCharsets.UTF_8);
     }
 
     /**
@@ -116,10 +174,11 @@ public class HttpResponseParser {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
         while (true) {
-            String chunkSizeLine = readLine(is);
-            if (chunkSizeLine == null || chunkSizeLine.isEmpty()) {
+            int length = readLine(is);
+            if (length <= 0) {
                 break;
             }
+            String chunkSizeLine = lineString(length);
 
             int chunkSize;
             try {
@@ -165,17 +224,19 @@ public class HttpResponseParser {
         return reasonPhrase;
     }
 
+    /**
+     * 获取所有响应头的Map快照（同名取最后一个值）
+     */
     public Map<String, String> getHeaders() {
-        return headers;
+        return headers.toMap();
     }
 
     public String getHeader(String name) {
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(name)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        return headers.get(name);
+    }
+
+    public List<String> getHeaderValues(String name) {
+        return headers.getAll(name);
     }
 
     public byte[] getBody() {
@@ -194,7 +255,7 @@ public class HttpResponseParser {
     }
 
     public int getContentLength() {
-        String contentLength = getHeader("Content-Length");
+        String contentLength = getHeader(HttpHeaders.CONTENT_LENGTH);
         if (contentLength != null) {
             try {
                 return Integer.parseInt(contentLength.trim());
@@ -206,19 +267,23 @@ public class HttpResponseParser {
     }
 
     public String getContentType() {
-        return getHeader("Content-Type");
+        return getHeader(HttpHeaders.CONTENT_TYPE);
     }
 
     public String getLocation() {
-        return getHeader("Location");
+        return getHeader(HttpHeaders.LOCATION);
     }
 
     public String getLastModified() {
-        return getHeader("Last-Modified");
+        return getHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    public String getETag() {
+        return getHeader(HttpHeaders.ETAG);
     }
 
     public boolean isKeepAlive() {
-        String connection = getHeader("Connection");
+        String connection = getHeader(HttpHeaders.CONNECTION);
         if (connection != null) {
             return connection.equalsIgnoreCase("keep-alive");
         }
@@ -233,8 +298,15 @@ public class HttpResponseParser {
         return statusCode == 304;
     }
 
+    /**
+     * 是否为1xx临时响应（如100 Continue），之后还有最终响应
+     */
+    public boolean isInformational() {
+        return statusCode >= 100 && statusCode < 200;
+    }
+
     private boolean isChunkedTransfer() {
-        String transferEncoding = getHeader("Transfer-Encoding");
+        String transferEncoding = getHeader(HttpHeaders.TRANSFER_ENCODING);
         return transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked");
     }
 
@@ -242,7 +314,7 @@ public class HttpResponseParser {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(httpVersion).append(" ").append(statusCode).append(" ").append(reasonPhrase).append("\n");
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
+        for (Map.Entry<String, String> entry : getHeaders().entrySet()) {
             sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
         }
         if (body != null && body.length > 0) {
@@ -0,0 +1,76 @@
+package common;
+
+/**
+ * 字节分隔符扫描
+ * HTTP编解码中查找CR、LF、冒号、空格等分隔符的热点循环集中在这里，
+ * 可选基于 jdk.incubator.vector 的实现一次比较多个字节，否则使用逐字节的标量实现。两种实现的结果完全相同。
+ *
+ * 实现由系统属性 http.scanner 选择：
+ * - auto（默认）：JVM加载了 jdk.incubator.vector 模块（--add-modules jdk.incubator.vector）时使用向量实现
+ * - vector：使用向量实现，模块不可用时回退到标量实现并打印警告
+ * - scalar：使用标量实现
+ */
+public abstract class ByteScanner {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final ByteScanner INSTANCE = select(System.getProperty("http.scanner", "auto"));
+
+    /**
+     * 当前使用的扫描实现
+     */
+    public static ByteScanner get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 标量实现（基准测试和结果比对用）
+     */
+    public static ByteScanner scalar() {
+        return ScalarByteScanner.INSTANCE;
+    }
+
+    /**
+     * 向量实现；模块不可用时返回null
+     */
+    public static ByteScanner vector() {
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            return null;
+        }
+        try {
+            return (ByteScanner) Class.forName("common.VectorByteScanner").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static ByteScanner select(String mode) {
+        switch (mode.toLowerCase()) {
+            case "scalar":
+                return scalar();
+            case "vector": {
+                ByteScanner vector = vector();
+                if (vector == null) {
+                    System.err.println("Warning: " + VECTOR_MODULE + " is not available (run with --add-modules "
+                            + VECTOR_MODULE + "), using scalar scanner");
+                    return scalar();
+                }
+                return vector;
+            }
+            default: {
+                ByteScanner vector = vector();
+                return vector != null ? vector : scalar();
+            }
+        }
+    }
+
+    /**
+     * 查找data[from, to)中第一个等于target的字节
+     *
+     * @return 下标；没有找到返回-1
+     */
+    public abstract int indexOf(byte[] data, int from, int to, byte target);
+
+    /**
+     * 实现名称：scalar 或 vector
+     */
+    public abstract String name();
+}
@@ -0,0 +1,119 @@
+package common;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 实体标签（ETag，RFC 9110 8.8.3）的生成与比较
+ * - 强标签取内容SHA-256摘要的前16字节（128位），以base64url编码：内容相同标签就相同，与修改时间无关；
+ * - 内容不在内存中的大文件不计算摘要，标签由文件标识（inode）、长度和修改时间组成，生成时不读文件；
+ * - 同一资源的压缩版本是不同的表示，标签附加编码名（"...-gzip"），避免与原始内容混用；
+ * - If-None-Match按弱比较匹配（忽略W/前缀），支持逗号分隔的多个标签和"*"。
+ */
+public final class EntityTag {
+    public static final String ANY = "*";
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int TAG_BYTES = 16;
+
+    private EntityTag() {
+    }
+
+    /**
+     * 新建计算强标签用的摘要
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // 每个Java平台都必须提供SHA-256
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+
+    /**
+     * 由内容摘要生成强标签（含双引号）
+     */
+    public static String strong(byte[] digest) {
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, TAG_BYTES)) + "\"";
+    }
+
+    /**
+     * 由文件元数据生成标签（含双引号），如 "1a2b3c-5f5e100-18c3a2f9e80"
+     * 文件被替换（inode变化）、长度或修改时间（毫秒）变化时标签随之变化，
+     * 与内容摘要标签的格式不同，两者不会相等。
+     *
+     * @param fileKey 文件标识（BasicFileAttributes.fileKey()），不支持时为null
+     */
+    public static String fromMetadata(Object fileKey, long length, long lastModified) {
+        StringBuilder sb = new StringBuilder(48).append('"');
+        if (fileKey != null) {
+            sb.append(Integer.toHexString(fileKey.hashCode())).append('-');
+        }
+        return sb.append(Long.toHexString(length)).append('-')
+                .append(Long.toHexString(lastModified)).append('"').toString();
+    }
+
+    /**
+     * 内容编码后的表示的标签："abc" -> "abc-gzip"
+     */
+    public static String withCoding(String tag, String coding) {
+        int end = tag.length() - 1;
+        if (end < 1 || tag.charAt(end) != '"') {
+            return tag;
+        }
+        return tag.substring(0, end) + "-" + coding + "\"";
+    }
+
+    /**
+     * If-None-Match是否匹配当前表示的标签
+     *
+     * @param header If-None-Match头的值，如 "*"、"\"a\", W/\"b\""
+     * @param tag    当前表示的标签（含双引号）
+     */
+    public static boolean matches(String header, String tag) {
+        String opaque = opaque(tag);
+        int i = 0;
+        int length = header.length();
+        while (i < length) {
+            char c = header.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',') {
+                i++;
+                continue;
+            }
+            if (c == '*') {
+                return true;
+            }
+            if (header.startsWith("W/", i)) {
+                i += 2;
+            }
+            if (i < length && header.charAt(i) == '"') {
+                int close = header.indexOf('"', i + 1);
+                if (close < 0) {
+                    return false;
+                }
+                if (header.regionMatches(i, opaque, 0, opaque.length()) && close + 1 - i == opaque.length()) {
+                    return true;
+                }
+                i = close + 1;
+            } else {
+                // 格式错误的项，跳到下一个逗号
+                int comma = header.indexOf(',', i);
+                if (comma < 0) {
+                    return false;
+                }
+                i = comma + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 去掉弱标签的W/前缀
+     */
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,383 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP头部表
+ * 按名称不区分大小写的散列表，查找为O(1)且不分配对象；保留插入顺序，支持同名多值。
+ *
+ * 条目可以直接来自原始字节（addRaw）：只记录偏移量，值在第一次访问时才创建String；
+ * 名称如果是HttpHeaders中的常用头部，直接使用常量，不再创建String。
+ * 调用clear()后可在同一连接的下一个请求中复用，内部数组不会重新分配。
+ */
+public class HeaderTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int ENTRY_INTS = 6;
+    private static final int HASH = 0;
+    private static final int NEXT = 1;
+    private static final int NAME_START = 2;
+    private static final int NAME_END = 3;
+    private static final int VALUE_START = 4;
+    private static final int VALUE_END = 5;
+
+    // 常用头部名称（按不区分大小写的散列值开放寻址）
+    private static final String[] KNOWN_NAMES = {
+            HttpHeaders.CONNECTION, HttpHeaders.DATE, HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.HOST, HttpHeaders.USER_AGENT, HttpHeaders.ACCEPT,
+            HttpHeaders.ACCEPT_LANGUAGE, HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING,
+            HttpHeaders.LOCATION, HttpHeaders.SERVER, HttpHeaders.LAST_MODIFIED, HttpHeaders.ETAG,
+            HttpHeaders.KEEP_ALIVE, HttpHeaders.RETRY_AFTER
+    };
+    private static final int KNOWN_MASK = 63;
+    private static final String[] KNOWN_SLOTS = new String[KNOWN_MASK + 1];
+
+    static {
+        for (String name : KNOWN_NAMES) {
+            int slot = hash(name) & KNOWN_MASK;
+            while (KNOWN_SLOTS[slot] != null) {
+                slot = (slot + 1) & KNOWN_MASK;
+            }
+            KNOWN_SLOTS[slot] = name;
+        }
+    }
+
+    // 原始条目引用的字节数组（同一个表中的原始条目来自同一数组）
+    private byte[] source;
+
+    // 条目按插入顺序存放
+    private String[] names;
+    private String[] values;
+    // 每个条目占ENTRY_INTS个int：散列值、链表下一个条目、名称起止、值起止（非原始条目为-1）
+    private int[] entries;
+    private int size;
+
+    // 散列桶：保存链表头部条目下标，-1为空
+    private int[] buckets;
+
+    public HeaderTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 添加一个头部（不替换同名头部）
+     */
+    public void add(String name, String value) {
+        int h = hash(name);
+        String known = lookupKnown(name, h);
+        int index = append(h);
+        names[index] = known != null ? known : name;
+        values[index] = value;
+    }
+
+    /**
+     * 添加一个只记录偏移量的原始头部
+     *
+     * @param data 头部所在的字节数组，表被读取期间不得修改
+     */
+    public void addRaw(byte[] data, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (source == null) {
+            source = data;
+        } else if (source != data) {
+            throw new IllegalStateException("Raw headers must share one source array");
+        }
+        int h = hash(data, nameStart, nameEnd);
+        int index = append(h);
+        names[index] = lookupKnown(data, nameStart, nameEnd, h);
+        int e = index * ENTRY_INTS;
+        entries[e + NAME_START] = nameStart;
+        entries[e + NAME_END] = nameEnd;
+        entries[e + VALUE_START] = valueStart;
+        entries[e + VALUE_END] = valueEnd;
+    }
+
+    /**
+     * 获取头部值；同名多值时返回最后添加的一个
+     */
+    public String get(String name) {
+        int index = find(name, hash(name));
+        return index == -1 ? null : valueAt(index);
+    }
+
+    /**
+     * 获取同名头部的所有值（按添加顺序）
+     */
+    public List<String> getAll(String name) {
+        int h = hash(name);
+        List<String> result = null;
+        for (int i = buckets[h & (buckets.length - 1)]; i != -1; i = entries[i * ENTRY_INTS + NEXT]) {
+            if (matches(i, name, h)) {
+                if (result == null) {
+                    result = new ArrayList<>(2);
+                }
+                result.add(valueAt(i));
+            }
+        }
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        // 链表中新条目在前
+        Collections.reverse(result);
+        return result;
+    }
+
+    public boolean contains(String name) {
+        return find(name, hash(name)) != -1;
+    }
+
+    /**
+     * 设置头部，替换所有同名头部
+     */
+    public void set(String name, String value) {
+        remove(name);
+        add(name, value);
+    }
+
+    /**
+     * 删除所有同名头部
+     *
+     * @return 是否删除了条目
+     */
+    public boolean remove(String name) {
+        int h = hash(name);
+        int bucket = h & (buckets.length - 1);
+        boolean found = false;
+        int prev = -1;
+        for (int i = buckets[bucket]; i != -1; i = entries[i * ENTRY_INTS + NEXT]) {
+            if (matches(i, name, h)) {
+                // 从链表摘除，并清空名称和值标记为已删除
+                names[i] = null;
+                values[i] = null;
+                entries[i * ENTRY_INTS + NAME_START] = -1;
+                found = true;
+                int following = entries[i * ENTRY_INTS + NEXT];
+                if (prev == -1) {
+                    buckets[bucket] = following;
+                } else {
+                    entries[prev * ENTRY_INTS + NEXT] = following;
+                }
+            } else {
+                prev = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 清空所有条目，保留已分配的数组以便复用
+     */
+    public void clear() {
+        Arrays.fill(buckets, -1);
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        source = null;
+        size = 0;
+    }
+
+    /**
+     * 已使用的条目槽位数（含已删除的条目），配合getName/getValue按添加顺序遍历
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 第index个条目的名称；条目已删除时返回null
+     */
+    public String getName(int index) {
+        return isRemoved(index) ? null : nameAt(index);
+    }
+
+    /**
+     * 第index个条目的值；条目已删除时返回null
+     */
+    public String getValue(int index) {
+        return isRemoved(index) ? null : valueAt(index);
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < size; i++) {
+            if (!isRemoved(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 转换为Map快照（按添加顺序，同名取最后一个值），修改快照不影响本表
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (!isRemoved(i)) {
+                map.put(nameAt(i), valueAt(i));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 比较字节区间与头部名称（ASCII，不区分大小写）
+     */
+    public static boolean equalsIgnoreCase(byte[] data, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            int b = data[start + i] & 0xFF;
+            int c = name.charAt(i);
+            if (b != c && toLowerAscii(b) != toLowerAscii(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private int find(String name, int h) {
+        for (int i = buckets[h & (buckets.length - 1)]; i != -1; i = entries[i * ENTRY_INTS + NEXT]) {
+            if (matches(i, name, h)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int index, String name, int h) {
+        int e = index * ENTRY_INTS;
+        if (entries[e + HASH] != h) {
+            return false;
+        }
+        String stored = names[index];
+        // 常量名称直接比较引用
+        if (stored == name) {
+            return true;
+        }
+        if (stored != null) {
+            return stored.equalsIgnoreCase(name);
+        }
+        return equalsIgnoreCase(source, entries[e + NAME_START], entries[e + NAME_END], name);
+    }
+
+    private boolean isRemoved(int index) {
+        return names[index] == null && entries[index * ENTRY_INTS + NAME_START] == -1;
+    }
+
+    private String nameAt(int index) {
+        if (names[index] == null) {
+            int e = index * ENTRY_INTS;
+            names[index] = rawString(entries[e + NAME_START], entries[e + NAME_END]);
+        }
+        return names[index];
+    }
+
+    private String valueAt(int index) {
+        if (values[index] == null) {
+            int e = index * ENTRY_INTS;
+            values[index] = rawString(entries[e + VALUE_START], entries[e + VALUE_END]);
+        }
+        return values[index];
+    }
+
+    private String rawString(int start, int end) {
+        return new String(source, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 追加条目并挂到散列桶链表头部
+     */
+    private int append(int h) {
+        if (size == names.length) {
+            grow();
+        }
+        int index = size++;
+        int e = index * ENTRY_INTS;
+        int bucket = h & (buckets.length - 1);
+        entries[e + HASH] = h;
+        entries[e + NEXT] = buckets[bucket];
+        entries[e + NAME_START] = -1;
+        buckets[bucket] = index;
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        names = new String[capacity];
+        values = new String[capacity];
+        entries = new int[capacity * ENTRY_INTS];
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        values = Arrays.copyOf(values, capacity);
+        entries = Arrays.copyOf(entries, capacity * ENTRY_INTS);
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+        // 按插入顺序重建链表，保持新条目在前
+        for (int i = 0; i < size; i++) {
+            if (!isRemoved(i)) {
+                int e = i * ENTRY_INTS;
+                int bucket = entries[e + HASH] & (buckets.length - 1);
+                entries[e + NEXT] = buckets[bucket];
+                buckets[bucket] = i;
+            }
+        }
+    }
+
+    private static String lookupKnown(String name, int h) {
+        for (int slot = h & KNOWN_MASK; KNOWN_SLOTS[slot] != null; slot = (slot + 1) & KNOWN_MASK) {
+            if (KNOWN_SLOTS[slot].equalsIgnoreCase(name)) {
+                return KNOWN_SLOTS[slot];
+            }
+        }
+        return null;
+    }
+
+    private static String lookupKnown(byte[] data, int start, int end, int h) {
+        for (int slot = h & KNOWN_MASK; KNOWN_SLOTS[slot] != null; slot = (slot + 1) & KNOWN_MASK) {
+            if (equalsIgnoreCase(data, start, end, KNOWN_SLOTS[slot])) {
+                return KNOWN_SLOTS[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 不区分大小写的散列值（字符串与字节两种形式结果一致）
+     */
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + toLowerAscii(name.charAt(i));
+        }
+        return spread(h);
+    }
+
+    private static int hash(byte[] data, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + toLowerAscii(data[i] & 0xFF);
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static int toLowerAscii(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
@@ -12,11 +12,15 @@ public class HttpConstants {
     public static final String CRLF = "\r\n";
     public static final String DOUBLE_CRLF = "\r\n\r\n";
 
+    // Expect: 100-continue 的临时响应
+    public static final String CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n";
+
     // 默认配置
     public static final int DEFAULT_PORT = 8080;
     public static final int DEFAULT_TIMEOUT = 60000; // 60秒
     public static final int MAX_KEEP_ALIVE_REQUESTS = 100;
     public static final int BUFFER_SIZE = 8192;
+    public static final long DEFAULT_MAX_BODY_SIZE = 10 * 1024 * 1024; // 10MB
 
     // 服务器信息
     public static final String SERVER_NAME = "SimpleHttpServer/1.0";
@@ -0,0 +1,226 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP日期时钟与格式转换（RFC 7231 7.1.1.1）
+ * 不使用SimpleDateFormat，也不加锁：
+ * - now()返回当前秒的Date头值，每秒只格式化一次，同时预编码整行 "Date: ...\r\n" 供响应编码器直接复制；
+ * - format()/parse()按固定格式手工转换，parse()另外接受RFC 850和asctime两种旧格式；
+ * - 解析结果按字符串缓存在一个小的直接映射表中：浏览器回传的If-Modified-Since就是服务器给出的Last-Modified，
+ *   同一资源的请求反复带着同一个值。
+ * 缓存项都是不可变对象，多个线程同时刷新时最多重复计算一次，不会读到不完整的值。
+ */
+public final class HttpDate {
+    private static final String[] DAYS = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final byte[] DATE_PREFIX = (HttpHeaders.DATE + ": ").getBytes(StandardCharsets.US_ASCII);
+
+    private static final int PARSE_CACHE_SIZE = 64;
+    private static final Parsed[] PARSE_CACHE = new Parsed[PARSE_CACHE_SIZE];
+
+    private static volatile Tick current = new Tick(System.currentTimeMillis() / 1000);
+
+    private HttpDate() {
+    }
+
+    /**
+     * 当前时间的HTTP日期（同一秒内返回同一个字符串）
+     */
+    public static String now() {
+        return tick().value;
+    }
+
+    /**
+     * value是now()返回的当前值时，返回预编码的整行 "Date: value\r\n"；否则返回null
+     * 返回的数组共享，调用方不能修改。
+     */
+    public static byte[] headerLine(String value) {
+        Tick tick = current;
+        // 按引用比较：只有now()返回的那个字符串才对应预编码的字节
+        return tick.value == value ? tick.headerLine : null;
+    }
+
+    /**
+     * 格式化为IMF-fixdate，如 Sun, 06 Nov 1994 08:49:37 GMT（毫秒部分舍去）
+     */
+    public static String format(long epochMillis) {
+        long seconds = Math.floorDiv(epochMillis, 1000);
+        long days = Math.floorDiv(seconds, 86400);
+        int secondOfDay = Math.floorMod(seconds, 86400);
+
+        // 由1970-01-01起的天数换算公历日期（按400年周期，3月为一年的第一个月）
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder sb = new StringBuilder(29);
+        sb.append(DAYS[Math.floorMod(days, 7)]).append(", ");
+        appendTwoDigits(sb, day);
+        sb.append(' ').append(MONTHS[month - 1]).append(' ').append(year).append(' ');
+        appendTwoDigits(sb, secondOfDay / 3600);
+        sb.append(':');
+        appendTwoDigits(sb, secondOfDay / 60 % 60);
+        sb.append(':');
+        appendTwoDigits(sb, secondOfDay % 60);
+        sb.append(" GMT");
+        return sb.toString();
+    }
+
+    /**
+     * 解析HTTP日期，接受IMF-fixdate、RFC 850和asctime三种格式
+     *
+     * @return 毫秒时间戳；格式错误返回-1
+     */
+    public static long parse(String value) {
+        if (value == null) {
+            return -1;
+        }
+        int slot = value.hashCode() & (PARSE_CACHE_SIZE - 1);
+        Parsed cached = PARSE_CACHE[slot];
+        if (cached != null && cached.value.equals(value)) {
+            return cached.millis;
+        }
+        long millis = parseUncached(value.trim());
+        PARSE_CACHE[slot] = new Parsed(value, millis);
+        return millis;
+    }
+
+    private static Tick tick() {
+        long second = System.currentTimeMillis() / 1000;
+        Tick tick = current;
+        if (tick.second != second) {
+            tick = new Tick(second);
+            current = tick;
+        }
+        return tick;
+    }
+
+    private static long parseUncached(String s) {
+        int comma = s.indexOf(',');
+        if (comma == 3) {
+            // IMF-fixdate: Sun, 06 Nov 1994 08:49:37 GMT
+            if (s.length() != 29 || !s.endsWith(" GMT")) {
+                return -1;
+            }
+            return toMillis(number(s, 12, 16), month(s, 8), number(s, 5, 7), s, 17);
+        }
+        if (comma > 3) {
+            // RFC 850: Sunday, 06-Nov-94 08:49:37 GMT
+            int p = comma + 2;
+            if (s.length() != p + 22 || s.charAt(p + 2) != '-' || s.charAt(p + 6) != '-' || !s.endsWith(" GMT")) {
+                return -1;
+            }
+            int year = number(s, p + 7, p + 9);
+            if (year < 0) {
+                return -1;
+            }
+            // 两位年份：00-69为20xx年，70-99为19xx年
+            year += year < 70 ? 2000 : 1900;
+            return toMillis(year, month(s, p + 3), number(s, p, p + 2), s, p + 10);
+        }
+        // asctime: Sun Nov  6 08:49:37 1994
+        if (s.length() != 24) {
+            return -1;
+        }
+        int day = s.charAt(8) == ' ' ? number(s, 9, 10) : number(s, 8, 10);
+        return toMillis(number(s, 20, 24), month(s, 4), day, s, 11);
+    }
+
+    /**
+     * @param timeStart "HH:mm:ss"在s中的起始位置
+     */
+    private static long toMillis(int year, int month, int day, String s, int timeStart) {
+        if (s.length() < timeStart + 8 || s.charAt(timeStart + 2) != ':' || s.charAt(timeStart + 5) != ':') {
+            return -1;
+        }
+        int hour = number(s, timeStart, timeStart + 2);
+        int minute = number(s, timeStart + 3, timeStart + 5);
+        int second = number(s, timeStart + 6, timeStart + 8);
+        if (year < 1970 || month < 1 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return -1;
+        }
+        // 公历日期换算为1970-01-01起的天数
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int mp = month > 2 ? month - 3 : month + 9;
+        int dayOfYear = (153 * mp + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return ((days * 86400) + hour * 3600 + minute * 60 + second) * 1000;
+    }
+
+    private static int month(String s, int start) {
+        if (s.length() < start + 3) {
+            return -1;
+        }
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (s.startsWith(MONTHS[i], start)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解析s[start, end)中的十进制数字；含非数字时返回-1
+     */
+    private static int number(String s, int start, int end) {
+        if (end > s.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static void appendTwoDigits(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * 一秒内共用的Date头
+     */
+    private static final class Tick {
+        final long second;
+        final String value;
+        final byte[] headerLine;
+
+        Tick(long second) {
+            this.second = second;
+            this.value = format(second * 1000);
+            byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+            this.headerLine = new byte[DATE_PREFIX.length + valueBytes.length + 2];
+            System.arraycopy(DATE_PREFIX, 0, headerLine, 0, DATE_PREFIX.length);
+            System.arraycopy(valueBytes, 0, headerLine, DATE_PREFIX.length, valueBytes.length);
+            headerLine[headerLine.length - 2] = '\r';
+            headerLine[headerLine.length - 1] = '\n';
+        }
+    }
+
+    private static final class Parsed {
+        final String value;
+        final long millis;
+
+        Parsed(String value, long millis) {
+            this.value = value;
+            this.millis = millis;
+        }
+    }
+}
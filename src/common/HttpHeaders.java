@@ -17,19 +17,27 @@ public class HttpHeaders {
     public static final String ACCEPT_ENCODING = "Accept-Encoding";
     public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
     public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String EXPECT = "Expect";
 
     // 响应头
     public static final String CONTENT_TYPE = "Content-Type";
     public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String CONTENT_DISPOSITION = "Content-Disposition";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
     public static final String LOCATION = "Location";
     public static final String SERVER = "Server";
     public static final String LAST_MODIFIED = "Last-Modified";
     public static final String ETAG = "ETag";
     public static final String KEEP_ALIVE = "Keep-Alive";
+    public static final String RETRY_AFTER = "Retry-After";
 
     // 常用值
     public static final String KEEP_ALIVE_VALUE = "keep-alive";
     public static final String CLOSE_VALUE = "close";
+    public static final String CONTINUE_VALUE = "100-continue";
+    public static final String CHUNKED_VALUE = "chunked";
 
     private HttpHeaders() {
         // 私有构造函数，防止实例化
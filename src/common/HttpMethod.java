@@ -1,5 +1,7 @@
 package common;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * HTTP请求方法枚举
  */
@@ -13,14 +15,64 @@ public enum HttpMethod {
     PATCH,
     UNKNOWN;
 
+    // values()每次调用都会复制数组，这里缓存一份
+    private static final HttpMethod[] KNOWN = { GET, POST, PUT, DELETE, HEAD, OPTIONS, PATCH };
+    private static final byte[][] NAME_BYTES = new byte[KNOWN.length][];
+
+    static {
+        for (int i = 0; i < KNOWN.length; i++) {
+            NAME_BYTES[i] = KNOWN[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
     public static HttpMethod fromString(String method) {
         if (method == null) {
             return UNKNOWN;
         }
-        try {
-            return valueOf(method.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            return UNKNOWN;
+        // 大写是常见情况，直接匹配
+        switch (method) {
+            case "GET":
+                return GET;
+            case "POST":
+                return POST;
+            case "PUT":
+                return PUT;
+            case "DELETE":
+                return DELETE;
+            case "HEAD":
+                return HEAD;
+            case "OPTIONS":
+                return OPTIONS;
+            case "PATCH":
+                return PATCH;
+            default:
+                break;
+        }
+        for (HttpMethod known : KNOWN) {
+            if (known.name().equalsIgnoreCase(method)) {
+                return known;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * 直接从字节解析请求方法（不区分大小写），不创建String
+     */
+    public static HttpMethod fromBytes(byte[] data, int offset, int length) {
+        for (int i = 0; i < KNOWN.length; i++) {
+            byte[] name = NAME_BYTES[i];
+            if (name.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && (data[offset + j] & 0xDF) == name[j]) {
+                j++;
+            }
+            if (j == length) {
+                return KNOWN[i];
+            }
         }
+        return UNKNOWN;
     }
 }
@@ -4,6 +4,9 @@ package common;
  * HTTP状态码枚举
  */
 public enum HttpStatus {
+    // 1xx 信息
+    CONTINUE(100, "Continue"),
+
     // 2xx 成功
     OK(200, "OK"),
     CREATED(201, "Created"),
@@ -19,6 +22,7 @@ public enum HttpStatus {
     FORBIDDEN(403, "Forbidden"),
     NOT_FOUND(404, "Not Found"),
     METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
+    PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
 
     // 5xx 服务器错误
     INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
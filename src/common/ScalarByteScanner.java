@@ -0,0 +1,26 @@
+package common;
+
+/**
+ * 逐字节扫描的标量实现
+ */
+final class ScalarByteScanner extends ByteScanner {
+    static final ScalarByteScanner INSTANCE = new ScalarByteScanner();
+
+    private ScalarByteScanner() {
+    }
+
+    @Override
+    public int indexOf(byte[] data, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
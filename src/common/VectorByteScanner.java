@@ -0,0 +1,37 @@
+package common;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 jdk.incubator.vector 的实现：每次比较一个向量宽度（AVX2为32字节）的字节，不足一个向量的尾部逐字节比较
+ * 只通过ByteScanner.vector()反射加载，未加载该模块时不会被解析。
+ */
+final class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int indexOf(byte[] data, int from, int to, byte target) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Byte> match = ByteVector.fromArray(SPECIES, data, i).compare(VectorOperators.EQ, target);
+            if (match.anyTrue()) {
+                return i + match.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+}
@@ -0,0 +1,110 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 接受连接的循环
+ * 每个Acceptor独占一个线程，在自己的（或共享的）ServerSocketChannel上阻塞accept，
+ * 并把新连接交给引擎处理。连接日志交给AsyncLogger，不在accept路径上做IO。
+ */
+public class Acceptor implements Runnable {
+
+    /**
+     * 新连接的处理回调（由引擎提供）
+     */
+    @FunctionalInterface
+    public interface ConnectionHandler {
+        void handle(SocketChannel channel) throws IOException;
+    }
+
+    private final int index;
+    private final ServerSocketChannel serverChannel;
+    private final ConnectionHandler handler;
+    private final AsyncLogger logger;
+    private final Thread thread;
+    private final AtomicLong accepted;
+    private volatile boolean running;
+
+    // 速率采样状态（只由统计线程访问）
+    private long lastAccepted;
+    private long lastSampleNanos;
+
+    public Acceptor(int index, ServerSocketChannel serverChannel, ConnectionHandler handler, AsyncLogger logger) {
+        this.index = index;
+        this.serverChannel = serverChannel;
+        this.handler = handler;
+        this.logger = logger;
+        this.thread = new Thread(this, "acceptor-" + index);
+        this.accepted = new AtomicLong();
+        this.lastSampleNanos = System.nanoTime();
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+                continue;
+            }
+
+            accepted.incrementAndGet();
+            logger.log("New connection from: ", channel.socket().getRemoteSocketAddress());
+
+            try {
+                handler.handle(channel);
+            } catch (IOException e) {
+                System.err.println("Error dispatching connection: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 忽略
+                }
+            }
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * 计算自上次采样以来的每秒连接数
+     */
+    public double sampleConnectionsPerSecond() {
+        long now = System.nanoTime();
+        long count = accepted.get();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        double rate = seconds > 0 ? (count - lastAccepted) / seconds : 0;
+        lastAccepted = count;
+        lastSampleNanos = now;
+        return rate;
+    }
+}
@@ -0,0 +1,126 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多个Acceptor组成的监听组
+ * 支持SO_REUSEPORT时（Linux），每个Acceptor绑定自己的监听套接字，由内核在它们之间分散新连接；
+ * 否则所有Acceptor在同一个监听套接字上accept。
+ */
+public class AcceptorGroup {
+    private final int port;
+    private final int count;
+    private final int backlog;
+    private final List<ServerSocketChannel> serverChannels;
+    private final List<Acceptor> acceptors;
+    private boolean reusePort;
+
+    public AcceptorGroup(int port, int count, int backlog) {
+        this.port = port;
+        this.count = count;
+        this.backlog = backlog;
+        this.serverChannels = new ArrayList<>();
+        this.acceptors = new ArrayList<>();
+    }
+
+    /**
+     * 绑定端口并创建Acceptor（失败时抛出异常，由调用方处理）
+     */
+    public void bind(Acceptor.ConnectionHandler handler, AsyncLogger logger) throws IOException {
+        reusePort = count > 1 && supportsReusePort();
+
+        try {
+            if (reusePort) {
+                for (int i = 0; i < count; i++) {
+                    serverChannels.add(openChannel(true));
+                }
+            } else {
+                serverChannels.add(openChannel(false));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        for (int i = 0; i < count; i++) {
+            ServerSocketChannel channel = serverChannels.get(reusePort ? i : 0);
+            acceptors.add(new Acceptor(i, channel, handler, logger));
+        }
+    }
+
+    public void start() {
+        for (Acceptor acceptor : acceptors) {
+            acceptor.start();
+        }
+    }
+
+    /**
+     * 等待所有Acceptor退出
+     */
+    public void join() throws InterruptedException {
+        for (Acceptor acceptor : acceptors) {
+            acceptor.join();
+        }
+    }
+
+    public void close() {
+        for (Acceptor acceptor : acceptors) {
+            acceptor.stop();
+        }
+        for (ServerSocketChannel channel : serverChannels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public List<Acceptor> getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * 各Acceptor自上次调用以来的每秒连接数；没有新连接时返回null
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("[acceptors]");
+        boolean active = false;
+        for (Acceptor acceptor : acceptors) {
+            long total = acceptor.getAccepted();
+            double rate = acceptor.sampleConnectionsPerSecond();
+            if (rate > 0) {
+                active = true;
+            }
+            sb.append(" #").append(acceptor.getIndex()).append('=')
+                    .append(String.format("%.1f", rate)).append("/s(").append(total).append(')');
+        }
+        return active ? sb.toString() : null;
+    }
+
+    private ServerSocketChannel openChannel(boolean reusePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        if (reusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        channel.bind(new InetSocketAddress(port), backlog);
+        return channel;
+    }
+
+    private static boolean supportsReusePort() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步日志
+ * 热路径上只做一次入队，字符串拼接和控制台输出都在后台线程完成。
+ * 队列满时直接丢弃并计数，绝不阻塞调用方。
+ */
+public class AsyncLogger implements Runnable {
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong dropped;
+    private final Thread thread;
+
+    public AsyncLogger() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AsyncLogger(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.dropped = new AtomicLong();
+        this.thread = new Thread(this, "async-logger");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 记录一条日志，输出内容为 message + arg
+     */
+    public void log(String message, Object arg) {
+        if (!queue.offer(new Entry(message, arg))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Entry entry = queue.take();
+                System.out.println(entry.message + entry.arg);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static class Entry {
+        final String message;
+        final Object arg;
+
+        Entry(String message, Object arg) {
+            this.message = message;
+            this.arg = arg;
+        }
+    }
+}
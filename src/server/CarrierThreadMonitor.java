@@ -0,0 +1,152 @@
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 虚拟线程模式的运行监控
+ * 周期性输出并发连接数和载体线程利用率，用于验证少量载体线程能否支撑大量长连接。
+ *
+ * 指标说明：
+ * - carrier: 载体线程（虚拟线程调度器的ForkJoinPool工作线程）的CPU时间 / (统计间隔 × 载体线程数)，
+ *   通过ThreadMXBean逐个线程采样，不含GC、JIT等其他线程；JVM不支持线程CPU计时时为n/a
+ * - handler: 处理器执行时间 / (统计间隔 × 载体线程数)，远高于carrier说明处理器内部在阻塞等待
+ * 载体线程数可能暂时超过parallelism（文件I/O等固定载体的调用会让调度器补偿线程），carrier因此可以超过100%。
+ */
+public class CarrierThreadMonitor implements Runnable {
+    private final int parallelism;
+    private final long intervalMillis;
+    private final AtomicInteger liveConnections;
+    private final AtomicInteger peakConnections;
+    private final AtomicLong handlerNanos;
+    private final Thread thread;
+    private final ThreadMXBean threads;
+    // 上次采样时各载体线程的累计CPU时间，按线程ID
+    private Map<Long, Long> carrierCpu;
+    private volatile boolean running;
+
+    public CarrierThreadMonitor(int parallelism, long intervalMillis) {
+        this.parallelism = parallelism;
+        this.intervalMillis = intervalMillis;
+        this.liveConnections = new AtomicInteger();
+        this.peakConnections = new AtomicInteger();
+        this.handlerNanos = new AtomicLong();
+        this.thread = new Thread(this, "carrier-monitor");
+        this.thread.setDaemon(true);
+        this.threads = ManagementFactory.getThreadMXBean();
+        this.carrierCpu = new HashMap<>();
+    }
+
+    public void start() {
+        if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * 包装连接任务，统计并发连接数
+     */
+    public Runnable track(Runnable connectionTask) {
+        return () -> {
+            int live = liveConnections.incrementAndGet();
+            peakConnections.accumulateAndGet(live, Math::max);
+            try {
+                connectionTask.run();
+            } finally {
+                liveConnections.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * 记录一次处理器调用耗时
+     */
+    public void recordHandlerTime(long nanos) {
+        handlerNanos.addAndGet(nanos);
+    }
+
+    public int getLiveConnections() {
+        return liveConnections.get();
+    }
+
+    public int getPeakConnections() {
+        return peakConnections.get();
+    }
+
+    @Override
+    public void run() {
+        carrierCpuDelta();
+        long lastTime = System.nanoTime();
+        long lastHandler = handlerNanos.get();
+
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long now = System.nanoTime();
+            long cpu = carrierCpuDelta();
+            long handler = handlerNanos.get();
+            double capacity = (double) (now - lastTime) * parallelism;
+
+            // 空闲时不输出
+            if (liveConnections.get() == 0 && handler == lastHandler) {
+                lastTime = now;
+                continue;
+            }
+
+            String carrier = cpu < 0 ? "n/a" : percent(cpu / capacity);
+            System.out.println("[virtual] connections=" + liveConnections.get()
+                    + " peak=" + peakConnections.get()
+                    + " carriers=" + parallelism
+                    + " carrier=" + carrier
+                    + " handler=" + percent((handler - lastHandler) / capacity));
+
+            lastTime = now;
+            lastHandler = handler;
+        }
+    }
+
+    private static String percent(double ratio) {
+        return String.format("%.1f%%", ratio * 100);
+    }
+
+    /**
+     * 载体线程自上次调用以来消耗的CPU时间（纳秒），不可用时返回-1
+     * 新出现的载体线程计入其全部CPU时间；上次采样后退出的载体线程最后一段时间不计入。
+     */
+    private long carrierCpuDelta() {
+        if (!threads.isThreadCpuTimeEnabled()) {
+            return -1;
+        }
+        Map<Long, Long> current = new HashMap<>();
+        long delta = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (!VirtualThreads.isCarrierThread(t)) {
+                continue;
+            }
+            long cpu = threads.getThreadCpuTime(t.getId());
+            if (cpu < 0) {
+                // 线程已退出
+                continue;
+            }
+            current.put(t.getId(), cpu);
+            delta += cpu - carrierCpu.getOrDefault(t.getId(), 0L);
+        }
+        carrierCpu = current;
+        return delta;
+    }
+}
@@ -1,17 +1,25 @@
 package server;
 
 import common.HttpConstants;
+import server.keepalive.IdleConnection;
+import server.keepalive.KeepAliveManager;
+import server.request.BadRequestException;
 import server.request.HttpRequest;
-import server.request.RequestParser;
+import server.request.PayloadTooLargeException;
+import server.request.RequestDecoder;
+import server.request.RequestReader;
 import server.response.HttpResponse;
 import server.response.ResponseBuilder;
+import server.response.ResponseEncoder;
 import server.router.Router;
 
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 
 /**
  * 客户端连接处理器
@@ -20,91 +28,178 @@ import java.net.SocketTimeoutException;
 public class ClientHandler implements Runnable {
     private final Socket clientSocket;
     private final Router router;
-    private final int keepAliveTimeout;
+    private final KeepAliveManager keepAliveManager;
     private final int maxRequests;
+    private final CarrierThreadMonitor monitor;
+    private final String clientInfo;
+    private final RequestDecoder decoder;
+    private final ExchangeRecycler recycler;
+    // 编码响应头的缓冲区，连接内的所有响应共用
+    private final ResponseEncoder encoder;
 
-    public ClientHandler(Socket clientSocket, Router router) {
-        this(clientSocket, router, HttpConstants.DEFAULT_TIMEOUT, HttpConstants.MAX_KEEP_ALIVE_REQUESTS);
+    public ClientHandler(Socket clientSocket, Router router, KeepAliveManager keepAliveManager) {
+        this(clientSocket, router, keepAliveManager, null);
     }
 
-    public ClientHandler(Socket clientSocket, Router router, int keepAliveTimeout, int maxRequests) {
+    public ClientHandler(Socket clientSocket, Router router, KeepAliveManager keepAliveManager,
+            CarrierThreadMonitor monitor) {
+        this(clientSocket, router, keepAliveManager, monitor, new ServerConfig());
+    }
+
+    /**
+     * @param keepAliveManager 空闲超时管理（取代每个Socket的SO_TIMEOUT）
+     * @param monitor          虚拟线程模式下统计处理器耗时，可为null
+     * @param config           对象复用模式、请求体最大长度等连接级配置
+     */
+    public ClientHandler(Socket clientSocket, Router router, KeepAliveManager keepAliveManager,
+            CarrierThreadMonitor monitor, ServerConfig config) {
         this.clientSocket = clientSocket;
         this.router = router;
-        this.keepAliveTimeout = keepAliveTimeout;
-        this.maxRequests = maxRequests;
+        this.keepAliveManager = keepAliveManager;
+        this.maxRequests = keepAliveManager.getMaxRequests();
+        this.monitor = monitor;
+        this.clientInfo = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+        this.decoder = new RequestDecoder(config.getMaxBodySize());
+        this.recycler = new ExchangeRecycler(config.getRecycle(), decoder);
+        this.encoder = new ResponseEncoder();
     }
 
     @Override
     public void run() {
-        InputStream inputStream = null;
-        OutputStream outputStream = null;
+        InputStream inputStream;
+        BufferedOutputStream outputStream;
+        int requestCount = 0;
+
+        // 空闲超时和请求接收期限由时间轮统一管理：超时后直接关闭Socket，阻塞中的读取随即抛出异常
+        IdleConnection idle = keepAliveManager.register(this::closeQuietly);
 
         try {
-            // 设置Socket超时
-            clientSocket.setSoTimeout(keepAliveTimeout);
             clientSocket.setKeepAlive(true);
 
-            inputStream = clientSocket.getInputStream();
-            outputStream = clientSocket.getOutputStream();
+            inputStream = new ReceiveCountingStream(clientSocket.getInputStream(), idle);
+            outputStream = new BufferedOutputStream(clientSocket.getOutputStream(), HttpConstants.BUFFER_SIZE);
+            RequestReader reader = new RequestReader(inputStream, outputStream, decoder);
+            // 由ServerSocketChannel接受的连接带有通道，大响应体通过聚集写与响应头一起发出
+            SocketChannel channel = clientSocket.getChannel();
 
-            int requestCount = 0;
             boolean keepAlive = true;
 
             // 长连接循环：持续处理来自同一连接的多个请求
             while (keepAlive && requestCount < maxRequests) {
+                // 解析HTTP请求
+                HttpRequest request;
                 try {
-                    // 解析HTTP请求
-                    HttpRequest request = RequestParser.parse(inputStream);
+                    request = reader.next();
+                } catch (PayloadTooLargeException e) {
+                    reject(outputStream, ResponseBuilder.payloadTooLarge(e.getMaxBodySize()));
+                    break;
+                } catch (BadRequestException e) {
+                    reject(outputStream, ResponseBuilder.badRequest(e));
+                    break;
+                }
 
-                    // 如果请求为null，说明连接已关闭
-                    if (request == null) {
-                        break;
-                    }
+                // 如果请求为null，说明连接已关闭
+                if (request == null) {
+                    break;
+                }
 
-                    requestCount++;
+                // 请求头（以及随请求头到达的小请求体）在空闲期限内收齐；
+                // 流式请求体由处理器读取，读取期间仍受接收期限限制，之后生成响应时不再计时
+                if (decoder.isReadingBody()) {
+                    idle.reading();
+                } else {
+                    idle.busy();
+                }
+                requestCount++;
 
-                    // 打印请求信息
-                    logRequest(request, requestCount);
+                // 打印请求信息
+                logRequest(request, requestCount);
 
-                    // 判断是否保持连接
-                    keepAlive = request.isKeepAlive();
+                // 判断是否保持连接
+                keepAlive = request.isKeepAlive() && requestCount < maxRequests;
 
-                    // 路由到对应处理器
-                    HttpResponse response;
-                    try {
+                // 路由到对应处理器
+                HttpResponse response;
+                long start = System.nanoTime();
+                recycler.beforeHandle();
+                try {
+                    // 客户端在等待100 Continue：先只根据请求头检查，拒绝时请求体不再传输
+                    response = decoder.isAwaitingContinue() ? router.precheck(request) : null;
+                    if (response == null) {
                         response = router.route(request);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        response = ResponseBuilder.internalServerError(e.getMessage());
                     }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    response = ResponseBuilder.internalServerError(e.getMessage());
+                } finally {
+                    recycler.afterHandle();
+                }
+                idle.busy();
+                if (monitor != null) {
+                    monitor.recordHandlerTime(System.nanoTime() - start);
+                }
+                if (decoder.isBodyTooLarge()) {
+                    // 处理器读取流式请求体时超过上限：剩余请求体无法跳过，回复413后关闭连接
+                    response = ResponseBuilder.payloadTooLarge(decoder.getMaxBodySize());
+                    keepAlive = false;
+                } else if (decoder.getBodyError() != null) {
+                    // 请求体格式错误：无论处理器返回了什么，都回复400后关闭连接（剩余数据无法分帧）
+                    response = ResponseBuilder.badRequest(decoder.getBodyError());
+                    keepAlive = false;
+                } else if (decoder.isAwaitingContinue()) {
+                    // 没有回复100 Continue就作答：客户端可能不再发送请求体，也可能照常发送，无法对齐下一个请求
+                    keepAlive = false;
+                }
+                if (response.prepareStreaming(request.getHttpVersion())) {
+                    // HTTP/1.0客户端不支持chunked，流式响应体以关闭连接结束
+                    keepAlive = false;
+                }
 
-                    // 设置连接头
-                    response.setKeepAlive(keepAlive);
+                // 设置连接头（超时和剩余请求数取实际配置）
+                response.setKeepAlive(keepAlive, keepAliveManager.currentTimeoutSeconds(),
+                        maxRequests - requestCount);
 
-                    // 发送响应
-                    response.send(outputStream);
+                // 发送响应；长连接上先不flush，等到需要阻塞读取下一个请求时再写出，
+                // 流水线请求的多个响应因此合并为一次写（较大的响应体直接与响应头聚集写出）；
+                // 流式响应体在这里由当前线程边生成边写出
+                encoder.writeTo(response, outputStream, channel);
+                if (!keepAlive) {
+                    outputStream.flush();
+                }
 
-                    // 打印响应信息
-                    logResponse(response);
+                // 打印响应信息
+                logResponse(response);
+                recycler.release(request, response);
 
-                } catch (SocketTimeoutException e) {
-                    // 超时，关闭连接
-                    System.out.println(
-                            "[" + getClientInfo() + "] Connection timeout after " + requestCount + " requests");
-                    break;
-                }
+                idle.idle();
             }
 
         } catch (IOException e) {
-            // 连接异常（客户端可能主动关闭）
+            // 连接异常（客户端可能主动关闭，或空闲超时被关闭）
             if (!clientSocket.isClosed()) {
                 System.err.println("[" + getClientInfo() + "] Error: " + e.getMessage());
             }
         } finally {
+            if (idle.isExpired()) {
+                // 超时，关闭连接
+                System.out.println(
+                        "[" + getClientInfo() + "] Connection timeout after " + requestCount + " requests");
+            }
+            idle.close();
             closeQuietly();
         }
     }
 
+    /**
+     * 请求头声明的请求体超过上限（413）或无法分帧（400/501）：不读取请求体，直接回复并关闭连接
+     */
+    private void reject(OutputStream out, HttpResponse response) throws IOException {
+        response.setKeepAlive(false);
+        encoder.writeTo(response, out);
+        out.flush();
+        logResponse(response);
+    }
+
     /**
      * 记录请求日志
      */
@@ -124,7 +219,7 @@ public class ClientHandler implements Runnable {
      * 获取客户端信息
      */
     private String getClientInfo() {
-        return clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+        return clientInfo;
     }
 
     /**
@@ -139,4 +234,25 @@ public class ClientHandler implements Runnable {
             // 忽略关闭异常
         }
     }
+
+    /**
+     * 把从Socket读到的字节数报告给IdleConnection，用于按最低速率延长请求体的接收期限
+     */
+    private static final class ReceiveCountingStream extends FilterInputStream {
+        private final IdleConnection idle;
+
+        ReceiveCountingStream(InputStream in, IdleConnection idle) {
+            super(in);
+            this.idle = idle;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                idle.received(n);
+            }
+            return n;
+        }
+    }
 }
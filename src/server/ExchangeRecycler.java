@@ -0,0 +1,67 @@
+package server;
+
+import server.request.HttpRequest;
+import server.request.RequestDecoder;
+import server.response.HttpResponse;
+
+/**
+ * 连接级请求/响应对象复用
+ * 每个连接持有一个实例，同一时刻只有一个线程访问（NIO引擎上由事件循环和处理器线程交替访问，
+ * 两者通过任务队列交接，保证可见性）。
+ *
+ * - ON：解码器每次复用同一个HttpRequest；处理请求时把连接的HttpResponse绑定到当前线程，
+ *   ResponseBuilder取用它而不是新建。请求之间只重置字段，头部表和编码缓冲区都保留。
+ * - DEBUG：不复用，每个请求处理完后让请求和响应对象失效；处理器如果在返回后仍持有并访问它们，
+ *   会立即抛出IllegalStateException，而不是在复用模式下悄悄读到下一个请求的数据。
+ * - OFF：每个请求新建对象。
+ *
+ * 使用约定：beforeHandle()/afterHandle()包住处理器调用，响应写出后调用release()。
+ */
+public class ExchangeRecycler {
+    private final ServerConfig.Recycle mode;
+    private HttpResponse response;
+
+    public ExchangeRecycler(ServerConfig.Recycle mode, RequestDecoder decoder) {
+        this.mode = mode;
+        if (mode == ServerConfig.Recycle.ON) {
+            decoder.setReusableRequest(new HttpRequest());
+        }
+    }
+
+    /**
+     * 调用处理器前：绑定本次请求使用的响应对象
+     */
+    public void beforeHandle() {
+        if (mode == ServerConfig.Recycle.OFF) {
+            return;
+        }
+        if (response == null || mode == ServerConfig.Recycle.DEBUG) {
+            response = new HttpResponse();
+        } else {
+            response.reset();
+        }
+        HttpResponse.bind(response);
+    }
+
+    /**
+     * 处理器返回（或抛出异常）后：解除绑定，避免线程被其他连接复用时取到本连接的响应
+     */
+    public void afterHandle() {
+        if (mode != ServerConfig.Recycle.OFF) {
+            HttpResponse.bind(null);
+        }
+    }
+
+    /**
+     * 响应写出后：调试模式下让本次的请求和响应对象失效
+     */
+    public void release(HttpRequest request, HttpResponse written) {
+        if (mode != ServerConfig.Recycle.DEBUG) {
+            return;
+        }
+        request.release();
+        written.release();
+        response.release();
+        response = null;
+    }
+}
@@ -1,17 +1,27 @@
 package server;
 
-import common.HttpConstants;
+import common.ByteScanner;
+import common.HttpHeaders;
+import common.HttpStatus;
+import server.handler.AssetCache;
+import server.handler.ExportHandler;
 import server.handler.LoginHandler;
 import server.handler.RegisterHandler;
 import server.handler.StaticFileHandler;
+import server.handler.UploadHandler;
+import server.keepalive.KeepAliveManager;
+import server.nio.NioServer;
+import server.response.CannedResponse;
+import server.response.HttpResponse;
+import server.response.ResponseBuilder;
+import server.response.ResponseCompressor;
 import server.router.Router;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
 
 /**
  * HTTP服务器主类
@@ -24,22 +34,83 @@ import java.util.concurrent.Executors;
  * - 支持304缓存机制
  * - 支持301/302重定向
  * - 提供用户注册/登录API
+ * - 可选阻塞（每连接一线程）、NIO事件循环或虚拟线程引擎
  */
 public class HttpServer {
+    // 运行统计输出间隔（毫秒）
+    private static final long STATS_INTERVAL = 10000;
+
     private final int port;
+    private final ServerConfig config;
     private final Router router;
-    private final ExecutorService threadPool;
-    private ServerSocket serverSocket;
+    private final WorkerPool workerPool;
+    private final KeepAliveManager keepAliveManager;
+    private final byte[] overloadResponse;
+    private final AsyncLogger acceptLogger;
+    private final StatsReporter statsReporter;
+    private final ResponseCompressor compressor;
+    private AssetCache assetCache;
+    private AcceptorGroup acceptorGroup;
+    private NioServer nioServer;
+    private CarrierThreadMonitor carrierMonitor;
     private volatile boolean running;
     private String staticDir;
 
     public HttpServer(int port) {
-        this.port = port;
-        this.router = new Router();
-        this.threadPool = Executors.newCachedThreadPool();
+        this(portConfig(port));
+    }
+
+    public HttpServer(ServerConfig config) {
+        this.port = config.getPort();
+        this.config = config;
+        this.compressor = new ResponseCompressor(config.isCompression(), config.getCompressionMinSize());
+        this.router = new Router().setCompressor(compressor);
+        this.workerPool = createWorkerPool(config);
+        this.keepAliveManager = new KeepAliveManager(config.getKeepAliveTimeout(),
+                config.getMinKeepAliveTimeout(), config.getMaxKeepAliveRequests(), config.getMaxConnections());
+        this.overloadResponse = encodeOverloadResponse(config.getRetryAfter());
+        this.acceptLogger = new AsyncLogger();
+        this.statsReporter = new StatsReporter(STATS_INTERVAL);
         this.running = false;
     }
 
+    /**
+     * 创建有界连接处理池；虚拟线程模式下每个连接一个虚拟线程，NIO引擎不需要
+     */
+    private WorkerPool createWorkerPool(ServerConfig config) {
+        if (config.getEngine() == ServerConfig.Engine.NIO) {
+            return null;
+        }
+        if (config.getEngine() == ServerConfig.Engine.BLOCKING) {
+            return WorkerPool.platform(config.getMaxWorkers(), config.getWorkerQueue());
+        }
+        if (config.isTracePinning()) {
+            VirtualThreads.tracePinnedThreads();
+        }
+        this.carrierMonitor = new CarrierThreadMonitor(VirtualThreads.carrierParallelism(), STATS_INTERVAL);
+        return WorkerPool.virtual(VirtualThreads.newPerTaskExecutor(), config.getMaxWorkers());
+    }
+
+    /**
+     * 预先编码过载时的503响应（不含Date头），拒绝连接时直接写出
+     */
+    private static byte[] encodeOverloadResponse(int retryAfter) {
+        HttpResponse response = ResponseBuilder.serviceUnavailable(retryAfter);
+        response.removeHeader(HttpHeaders.DATE);
+        response.setKeepAlive(false);
+        try {
+            return response.build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode 503 response", e);
+        }
+    }
+
+    private static ServerConfig portConfig(int port) {
+        ServerConfig config = new ServerConfig();
+        config.setPort(port);
+        return config;
+    }
+
     /**
      * 配置路由
      */
@@ -47,23 +118,24 @@ public class HttpServer {
         // 注册API路由
         router.post("/api/register", new RegisterHandler());
         router.post("/api/login", new LoginHandler());
+        router.post("/api/upload", new UploadHandler());
+        router.get("/api/export", new ExportHandler());
 
-        // 演示重定向路由
-        router.get("/old-page", request -> {
-            // 301 永久重定向示例
-            return server.response.ResponseBuilder.movedPermanently("/index.html");
-        });
+        // 演示重定向路由；目标固定，响应在注册时编码一次
+        // 301 永久重定向示例
+        CannedResponse movedPermanently = CannedResponse.redirect(HttpStatus.MOVED_PERMANENTLY, "/index.html");
+        router.get("/old-page", request -> ResponseBuilder.canned(movedPermanently));
 
-        router.get("/temp-redirect", request -> {
-            // 302 临时重定向示例
-            return server.response.ResponseBuilder.found("/index.html");
-        });
+        // 302 临时重定向示例
+        CannedResponse found = CannedResponse.redirect(HttpStatus.FOUND, "/index.html");
+        router.get("/temp-redirect", request -> ResponseBuilder.canned(found));
 
-        // API: 获取服务器状态
-        router.get("/api/status", request -> {
-            String json = "{\"status\":\"running\",\"port\":" + port + "}";
-            return server.response.ResponseBuilder.json(json);
-        });
+        // API: 获取服务器状态（内容在运行期间不变）
+        CannedResponse status = CannedResponse.json("{\"status\":\"running\",\"port\":" + port + "}");
+        router.get("/api/status", request -> ResponseBuilder.canned(status));
+
+        // API: 运行统计（连接池、Acceptor等）
+        router.get("/api/stats", request -> ResponseBuilder.json(statsJson()));
 
         // API: 测试500内部服务器错误
         router.get("/api/error", request -> {
@@ -73,7 +145,11 @@ public class HttpServer {
 
         // 设置静态文件处理器作为默认处理器
         this.staticDir = getStaticDirectory();
-        router.setDefaultHandler(new StaticFileHandler(staticDir));
+        assetCache = new AssetCache(Paths.get(staticDir), config.getAssetCacheSize(), config.getAssetCacheMaxFile());
+        // 映射区间的上限与transferTo阈值相接：更大的文件直接从文件发送
+        assetCache.setMapping(config.getMmapMinSize(), config.getSendfileThreshold(), config.getMmapMaxBytes());
+        assetCache.start();
+        router.setDefaultHandler(new StaticFileHandler(assetCache, compressor, config.getSendfileThreshold()));
 
         System.out.println("Static files directory: " + staticDir);
     }
@@ -113,54 +189,176 @@ public class HttpServer {
     public void start() {
         configureRoutes();
 
+        acceptorGroup = new AcceptorGroup(port, config.getAcceptors(), config.getBacklog());
         try {
-            serverSocket = new ServerSocket(port);
-            running = true;
-
-            System.out.println("========================================");
-            System.out.println("   Simple HTTP Server v1.0");
-            System.out.println("========================================");
-            System.out.println("Server started on port " + port);
-            System.out.println("Access: http://localhost:" + port);
-            System.out.println("");
-            System.out.println("Available endpoints:");
-            System.out.println("  GET  /              - Home page");
-            System.out.println("  GET  /api/status    - Server status");
-            System.out.println("  POST /api/register  - User registration");
-            System.out.println("  POST /api/login     - User login");
-            System.out.println("  GET  /old-page      - 301 redirect demo");
-            System.out.println("  GET  /temp-redirect - 302 redirect demo");
-            System.out.println("========================================");
-            System.out.println("Press Ctrl+C to stop the server");
-            System.out.println("");
-
-            // 添加关闭钩子
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                System.out.println("\nShutting down server...");
-                stop();
-            }));
-
-            // 接受客户端连接
-            while (running) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    System.out.println("New connection from: " +
-                            clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
+            if (config.getEngine() == ServerConfig.Engine.NIO) {
+                nioServer = new NioServer(config, router, keepAliveManager, overloadResponse);
+                nioServer.start();
+                acceptorGroup.bind(nioServer::register, acceptLogger);
+            } else {
+                acceptorGroup.bind(this::dispatch, acceptLogger);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            e.printStackTrace();
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+            return;
+        }
+        running = true;
 
-                    // 使用线程池处理客户端请求
-                    threadPool.execute(new ClientHandler(clientSocket, router));
+        printBanner();
 
-                } catch (IOException e) {
-                    if (running) {
-                        System.err.println("Error accepting connection: " + e.getMessage());
-                    }
+        if (carrierMonitor != null) {
+            carrierMonitor.start();
+        }
+        statsReporter.register(acceptorGroup::report);
+        if (workerPool != null) {
+            statsReporter.register(this::reportWorkers);
+        }
+        statsReporter.start();
+
+        // 添加关闭钩子
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\nShutting down server...");
+            stop();
+        }));
+
+        // 接受客户端连接，直到服务器停止
+        acceptorGroup.start();
+        try {
+            acceptorGroup.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 阻塞/虚拟线程引擎：使用线程池处理客户端请求，超出上限时返回503并关闭连接
+     */
+    private void dispatch(SocketChannel channel) {
+        ClientHandler handler = new ClientHandler(channel.socket(), router, keepAliveManager, carrierMonitor,
+                config);
+        if (!workerPool.submit(carrierMonitor != null ? carrierMonitor.track(handler) : handler)) {
+            rejectOverloaded(channel);
+        }
+    }
+
+    /**
+     * 在已接受的连接上写出预编码的503响应并关闭
+     */
+    private void rejectOverloaded(SocketChannel channel) {
+        try {
+            channel.write(ByteBuffer.wrap(overloadResponse));
+            channel.shutdownOutput();
+        } catch (IOException e) {
+            // 客户端已断开，忽略
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * 工作线程池统计；空闲且无拒绝时返回null
+     */
+    private String reportWorkers() {
+        if (workerPool.getActive() == 0 && workerPool.getQueued() == 0 && workerPool.getRejected() == 0) {
+            return null;
+        }
+        return workerPool.report();
+    }
+
+    /**
+     * 运行统计（JSON），供 /api/stats 使用
+     */
+    private String statsJson() {
+        StringBuilder sb = new StringBuilder("{");
+        if (workerPool != null) {
+            sb.append("\"workers\":{\"active\":").append(workerPool.getActive())
+                    .append(",\"max\":").append(workerPool.getMaxWorkers())
+                    .append(",\"queued\":").append(workerPool.getQueued())
+                    .append(",\"rejected\":").append(workerPool.getRejected())
+                    .append("},");
+        }
+        if (nioServer != null && nioServer.getHandlers() != null) {
+            WorkerPool handlers = nioServer.getHandlers();
+            sb.append("\"handlers\":{\"active\":").append(handlers.getActive())
+                    .append(",\"max\":").append(handlers.getMaxWorkers())
+                    .append(",\"queued\":").append(handlers.getQueued())
+                    .append(",\"rejected\":").append(handlers.getRejected())
+                    .append("},");
+        }
+        if (nioServer != null && nioServer.getProducers() != null) {
+            WorkerPool producers = nioServer.getProducers();
+            sb.append("\"producers\":{\"active\":").append(producers.getActive())
+                    .append(",\"max\":").append(producers.getMaxWorkers())
+                    .append(",\"rejected\":").append(producers.getRejected())
+                    .append("},");
+        }
+        sb.append("\"keepAlive\":{\"connections\":").append(keepAliveManager.getConnections())
+                .append(",\"timeout\":").append(keepAliveManager.currentTimeoutSeconds())
+                .append(",\"expired\":").append(keepAliveManager.getExpired())
+                .append("},");
+        sb.append("\"compression\":").append(compressor.statsJson()).append(',');
+        if (assetCache != null) {
+            sb.append("\"assets\":").append(assetCache.statsJson()).append(',');
+        }
+        sb.append("\"acceptors\":[");
+        if (acceptorGroup != null) {
+            boolean first = true;
+            for (Acceptor acceptor : acceptorGroup.getAcceptors()) {
+                if (!first) {
+                    sb.append(',');
                 }
+                sb.append(acceptor.getAccepted());
+                first = false;
             }
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
 
-        } catch (IOException e) {
-            System.err.println("Failed to start server: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * 打印启动信息
+     */
+    private void printBanner() {
+        System.out.println("========================================");
+        System.out.println("   Simple HTTP Server v1.0");
+        System.out.println("========================================");
+        System.out.println("Server started on port " + port + " (" + describeEngine() + ")");
+        System.out.println("Access: http://localhost:" + port);
+        System.out.println("");
+        System.out.println("Available endpoints:");
+        System.out.println("  GET  /              - Home page");
+        System.out.println("  GET  /api/status    - Server status");
+        System.out.println("  GET  /api/stats     - Runtime statistics");
+        System.out.println("  POST /api/register  - User registration");
+        System.out.println("  POST /api/login     - User login");
+        System.out.println("  GET  /api/export    - Streaming CSV export");
+        System.out.println("  GET  /old-page      - 301 redirect demo");
+        System.out.println("  GET  /temp-redirect - 302 redirect demo");
+        System.out.println("========================================");
+        System.out.println("Press Ctrl+C to stop the server");
+        System.out.println("");
+    }
+
+    private String describeEngine() {
+        String acceptors = config.getAcceptors() + " acceptor(s)"
+                + (acceptorGroup.isReusePort() ? " with SO_REUSEPORT" : "")
+                + ", recycle=" + config.getRecycle().name().toLowerCase()
+                + ", scanner=" + ByteScanner.get().name();
+        if (config.getEngine() == ServerConfig.Engine.NIO) {
+            return "nio, " + config.getIoThreads() + " event loops, " + acceptors;
+        }
+        if (config.getEngine() == ServerConfig.Engine.VIRTUAL) {
+            return "virtual threads, " + VirtualThreads.carrierParallelism() + " carriers, " + acceptors;
         }
+        return "blocking, thread per connection, " + acceptors;
     }
 
     /**
@@ -169,15 +367,24 @@ public class HttpServer {
     public void stop() {
         running = false;
 
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-        } catch (IOException e) {
-            // 忽略
+        if (acceptorGroup != null) {
+            acceptorGroup.close();
+        }
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+        if (carrierMonitor != null) {
+            carrierMonitor.stop();
+        }
+        statsReporter.stop();
+        keepAliveManager.stop();
+        if (assetCache != null) {
+            assetCache.close();
         }
 
-        threadPool.shutdown();
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
         System.out.println("Server stopped.");
     }
 
@@ -192,19 +399,18 @@ public class HttpServer {
      * 主入口
      */
     public static void main(String[] args) {
-        int port = HttpConstants.DEFAULT_PORT;
+        ServerConfig config;
 
-        // 从命令行参数获取端口
-        if (args.length > 0) {
-            try {
-                port = Integer.parseInt(args[0]);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid port number: " + args[0]);
-                System.exit(1);
-            }
+        // 从命令行参数获取端口和引擎等配置
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
         }
 
-        HttpServer server = new HttpServer(port);
+        HttpServer server = new HttpServer(config);
         server.start();
     }
 }
@@ -0,0 +1,446 @@
+package server;
+
+import common.HttpConstants;
+import server.handler.AssetCache;
+import server.handler.StaticFileHandler;
+import server.response.ResponseCompressor;
+
+/**
+ * 服务器配置
+ * 从命令行参数解析，格式: [port] [--key=value ...]
+ *
+ * 支持的参数：
+ * - --engine=blocking|nio|virtual 连接处理引擎（默认 blocking；JDK不支持虚拟线程时virtual退回blocking）
+ * - --io-threads=N NIO引擎的事件循环线程数（默认 CPU 核数）
+ * - --acceptors=N 接受连接的线程数，Linux上每个线程用SO_REUSEPORT绑定独立的监听套接字（默认 1）
+ * - --max-workers=N 同时处理的连接数上限（默认 平台线程256，虚拟线程10000）
+ * - --worker-queue=N 等待工作线程的连接数上限（默认 256，仅平台线程）
+ * - --backlog=N 内核accept队列长度（默认 1024）
+ * - --retry-after=S 过载时503响应的Retry-After秒数（默认 5）
+ * - --keep-alive-timeout=S 长连接空闲超时秒数，也是接收一个请求的基本期限（默认 60）
+ * - --keep-alive-min-timeout=S 连接数接近上限时空闲超时的下限秒数（默认 5）
+ * - --keep-alive-requests=N 每个连接最多处理的请求数（默认 100）
+ * - --max-connections=N 连接数上限，超过一半后空闲超时开始缩短（默认 NIO 10000，其他引擎同 max-workers）
+ * - --trace-pinning 虚拟线程模式下打印载体线程被固定(pinned)的栈（其他引擎忽略）
+ * - --recycle=on|off|debug 每个连接复用请求/响应对象（默认 on；debug 不复用，并检测处理器返回后仍持有的引用）
+ * - --max-body-size=N 请求体最大字节数，超过返回413（默认 10485760；NIO引擎不超过约2GB）
+ * - --compression=on|off 按Accept-Encoding以gzip/deflate压缩文本响应（默认 on）
+ * - --compression-min-size=N 响应体不小于N字节才压缩（默认 1024）
+ * - --asset-cache-size=N 静态资源缓存的字节上限，0表示不缓存（默认 67108864）
+ * - --asset-cache-max-file=N 缓存内容的单个文件上限，更大的文件每次从磁盘读取（默认 1048576）
+ * - --sendfile-threshold=N 未缓存内容且不小于N字节的静态文件以transferTo发送（默认 1048576）
+ * - --mmap-min-size=N 长度在[N, sendfile-threshold)之间的缓存文件以内存映射保存（默认 65536）
+ * - --mmap-max-bytes=N 同时映射的字节数上限，0表示不映射（默认 268435456）
+ */
+public class ServerConfig {
+
+    /**
+     * 连接处理引擎
+     */
+    public enum Engine {
+        /** 每个连接一个线程（ClientHandler） */
+        BLOCKING,
+        /** 基于Selector的非阻塞事件循环 */
+        NIO,
+        /** 每个连接一个虚拟线程（需要 Java 21+） */
+        VIRTUAL
+    }
+
+    /**
+     * 请求/响应对象复用模式
+     */
+    public enum Recycle {
+        /** 每个请求新建对象 */
+        OFF,
+        /** 每个连接复用一个请求对象和一个响应对象 */
+        ON,
+        /** 不复用；请求处理完后让对象失效，处理器之后再访问会抛出异常 */
+        DEBUG
+    }
+
+    private int port = HttpConstants.DEFAULT_PORT;
+    private Engine engine = Engine.BLOCKING;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+    private int keepAliveTimeout = HttpConstants.DEFAULT_TIMEOUT;
+    private int minKeepAliveTimeout = 5000;
+    private int maxConnections = 0;
+    private int maxKeepAliveRequests = HttpConstants.MAX_KEEP_ALIVE_REQUESTS;
+    private int acceptors = 1;
+    private int maxWorkers = 0;
+    private int workerQueue = 256;
+    private int backlog = 1024;
+    private int retryAfter = 5;
+    private boolean tracePinning = false;
+    private Recycle recycle = Recycle.ON;
+    private long maxBodySize = HttpConstants.DEFAULT_MAX_BODY_SIZE;
+    private boolean compression = true;
+    private int compressionMinSize = ResponseCompressor.DEFAULT_MIN_SIZE;
+    private long assetCacheSize = AssetCache.DEFAULT_MAX_BYTES;
+    private long assetCacheMaxFile = AssetCache.DEFAULT_MAX_FILE_SIZE;
+    private long sendfileThreshold = StaticFileHandler.DEFAULT_SENDFILE_THRESHOLD;
+    private long mmapMinSize = AssetCache.DEFAULT_MAP_MIN_SIZE;
+    private long mmapMaxBytes = AssetCache.DEFAULT_MAX_MAPPED_BYTES;
+
+    /**
+     * 解析命令行参数
+     *
+     * @throws IllegalArgumentException 参数格式错误
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                config.port = parseInt("port", arg);
+                continue;
+            }
+
+            int eq = arg.indexOf('=');
+            String key = eq == -1 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq == -1 ? "" : arg.substring(eq + 1);
+
+            switch (key) {
+                case "port":
+                    config.port = parseInt(key, value);
+                    break;
+                case "engine":
+                    config.engine = parseEngine(value);
+                    break;
+                case "io-threads":
+                    config.ioThreads = parsePositive(key, value);
+                    break;
+                case "acceptors":
+                    config.acceptors = parsePositive(key, value);
+                    break;
+                case "max-workers":
+                    config.maxWorkers = parsePositive(key, value);
+                    break;
+                case "worker-queue":
+                    config.workerQueue = parseInt(key, value);
+                    break;
+                case "backlog":
+                    config.backlog = parsePositive(key, value);
+                    break;
+                case "retry-after":
+                    config.retryAfter = parsePositive(key, value);
+                    break;
+                case "keep-alive-timeout":
+                    config.keepAliveTimeout = parseSeconds(key, value);
+                    break;
+                case "keep-alive-min-timeout":
+                    config.minKeepAliveTimeout = parseSeconds(key, value);
+                    break;
+                case "keep-alive-requests":
+                    config.maxKeepAliveRequests = parsePositive(key, value);
+                    break;
+                case "max-connections":
+                    config.maxConnections = parsePositive(key, value);
+                    break;
+                case "trace-pinning":
+                    config.tracePinning = true;
+                    break;
+                case "recycle":
+                    config.recycle = parseRecycle(value);
+                    break;
+                case "max-body-size":
+                    config.maxBodySize = parseLong(key, value);
+                    break;
+                case "compression":
+                    config.compression = parseSwitch(key, value);
+                    break;
+                case "compression-min-size":
+                    config.compressionMinSize = (int) Math.min(parseLong(key, value), Integer.MAX_VALUE);
+                    break;
+                case "asset-cache-size":
+                    config.assetCacheSize = parseLong(key, value);
+                    break;
+                case "asset-cache-max-file":
+                    config.assetCacheMaxFile = parseLong(key, value);
+                    break;
+                case "sendfile-threshold":
+                    config.sendfileThreshold = parseLong(key, value);
+                    break;
+                case "mmap-min-size":
+                    config.mmapMinSize = parseLong(key, value);
+                    break;
+                case "mmap-max-bytes":
+                    config.mmapMaxBytes = parseLong(key, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        config.engine = resolveEngine(config.engine);
+        if (config.tracePinning && config.engine != Engine.VIRTUAL) {
+            System.err.println("--trace-pinning only applies to virtual threads, ignored");
+            config.tracePinning = false;
+        }
+        return config;
+    }
+
+    /**
+     * 当前JDK不支持虚拟线程时把VIRTUAL退回BLOCKING（在解析时决定，之后的默认值如max-workers按实际引擎计算）
+     */
+    private static Engine resolveEngine(Engine engine) {
+        if (engine == Engine.VIRTUAL && !VirtualThreads.isSupported()) {
+            System.err.println("Virtual threads require Java 21+ (running " + System.getProperty("java.version")
+                    + "), falling back to platform thread pool");
+            return Engine.BLOCKING;
+        }
+        return engine;
+    }
+
+    private static Engine parseEngine(String value) {
+        try {
+            return Engine.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid engine: " + value + " (expected blocking, nio or virtual)");
+        }
+    }
+
+    private static Recycle parseRecycle(String value) {
+        try {
+            return Recycle.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid recycle: " + value + " (expected on, off or debug)");
+        }
+    }
+
+    private static boolean parseSwitch(String key, String value) {
+        if ("on".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("off".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid " + key + ": " + value + " (expected on or off)");
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    private static long parseLong(String key, String value) {
+        try {
+            long n = Long.parseLong(value.trim());
+            if (n < 0) {
+                throw new IllegalArgumentException("Invalid " + key + ": " + value + " (must be >= 0)");
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    private static int parsePositive(String key, String value) {
+        int n = parseInt(key, value);
+        if (n <= 0) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value + " (must be > 0)");
+        }
+        return n;
+    }
+
+    /**
+     * 解析正整数秒数，返回毫秒
+     */
+    private static int parseSeconds(String key, String value) {
+        int seconds = parsePositive(key, value);
+        if (seconds > Integer.MAX_VALUE / 1000) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value
+                    + " (must be <= " + Integer.MAX_VALUE / 1000 + ")");
+        }
+        return seconds * 1000;
+    }
+
+    // Getters and Setters
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = resolveEngine(engine);
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public int getMinKeepAliveTimeout() {
+        return minKeepAliveTimeout;
+    }
+
+    public void setMinKeepAliveTimeout(int minKeepAliveTimeout) {
+        this.minKeepAliveTimeout = minKeepAliveTimeout;
+    }
+
+    /**
+     * 连接数上限；未配置时NIO引擎为10000，其他引擎等于max-workers
+     */
+    public int getMaxConnections() {
+        if (maxConnections > 0) {
+            return maxConnections;
+        }
+        return engine == Engine.NIO ? 10000 : getMaxWorkers();
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    /**
+     * 同时处理的连接数上限；未配置时平台线程为256，虚拟线程为10000
+     */
+    public int getMaxWorkers() {
+        if (maxWorkers > 0) {
+            return maxWorkers;
+        }
+        return engine == Engine.VIRTUAL ? 10000 : 256;
+    }
+
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    public int getWorkerQueue() {
+        return workerQueue;
+    }
+
+    public void setWorkerQueue(int workerQueue) {
+        this.workerQueue = workerQueue;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public boolean isTracePinning() {
+        return tracePinning;
+    }
+
+    public void setTracePinning(boolean tracePinning) {
+        this.tracePinning = tracePinning;
+    }
+
+    public Recycle getRecycle() {
+        return recycle;
+    }
+
+    public void setRecycle(Recycle recycle) {
+        this.recycle = recycle;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    public void setCompressionMinSize(int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    public long getAssetCacheSize() {
+        return assetCacheSize;
+    }
+
+    public void setAssetCacheSize(long assetCacheSize) {
+        this.assetCacheSize = assetCacheSize;
+    }
+
+    public long getAssetCacheMaxFile() {
+        return assetCacheMaxFile;
+    }
+
+    public void setAssetCacheMaxFile(long assetCacheMaxFile) {
+        this.assetCacheMaxFile = assetCacheMaxFile;
+    }
+
+    public long getSendfileThreshold() {
+        return sendfileThreshold;
+    }
+
+    public void setSendfileThreshold(long sendfileThreshold) {
+        this.sendfileThreshold = sendfileThreshold;
+    }
+
+    public long getMmapMinSize() {
+        return mmapMinSize;
+    }
+
+    public void setMmapMinSize(long mmapMinSize) {
+        this.mmapMinSize = mmapMinSize;
+    }
+
+    public long getMmapMaxBytes() {
+        return mmapMaxBytes;
+    }
+
+    public void setMmapMaxBytes(long mmapMaxBytes) {
+        this.mmapMaxBytes = mmapMaxBytes;
+    }
+}
@@ -0,0 +1,57 @@
+package server;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * 运行统计输出
+ * 后台线程按固定间隔调用各统计来源，输出非null的结果行。
+ */
+public class StatsReporter implements Runnable {
+    private final long intervalMillis;
+    private final List<Supplier<String>> sources;
+    private final Thread thread;
+    private volatile boolean running;
+
+    public StatsReporter(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        this.sources = new CopyOnWriteArrayList<>();
+        this.thread = new Thread(this, "stats-reporter");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * 注册统计来源；返回null表示本周期无需输出
+     */
+    public void register(Supplier<String> source) {
+        sources.add(source);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            for (Supplier<String> source : sources) {
+                String line = source.get();
+                if (line != null) {
+                    System.out.println(line);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程支持
+ * 通过反射调用 Java 21 的 Executors.newVirtualThreadPerTaskExecutor()，
+ * 使项目仍可在更低版本的JDK上编译运行（此时 isSupported() 返回 false）。
+ */
+public class VirtualThreads {
+    // 虚拟线程调度器的载体线程数，JDK默认等于CPU核数
+    private static final String PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+    // 载体线程被固定(pinned)时打印栈，必须在第一个虚拟线程创建前设置
+    private static final String TRACE_PINNED_PROPERTY = "jdk.tracePinnedThreads";
+    // 默认调度器的载体线程类（JDK内部类，只按名称比较）
+    private static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+
+    private static final Method NEW_EXECUTOR = lookupExecutorFactory();
+
+    private VirtualThreads() {
+        // 私有构造函数，防止实例化
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * 创建每任务一个虚拟线程的执行器
+     *
+     * @throws UnsupportedOperationException 当前JDK不支持虚拟线程
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads require Java 21+, running on " + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * 开启载体线程固定诊断：虚拟线程在synchronized块或本地调用中阻塞时打印栈
+     * 只对虚拟线程有效；服务器自身的热点路径已不在监视器内阻塞（AssetCache用ReentrantLock，
+     * Asset的压缩版本无锁读写），打印出的栈通常来自处理器或第三方库。
+     */
+    public static void tracePinnedThreads() {
+        if (System.getProperty(TRACE_PINNED_PROPERTY) == null) {
+            System.setProperty(TRACE_PINNED_PROPERTY, "short");
+        }
+    }
+
+    /**
+     * 虚拟线程调度器的载体线程数
+     */
+    public static int carrierParallelism() {
+        String value = System.getProperty(PARALLELISM_PROPERTY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 是否是默认虚拟线程调度器的载体线程
+     */
+    public static boolean isCarrierThread(Thread thread) {
+        return thread.getClass().getName().equals(CARRIER_THREAD_CLASS);
+    }
+
+    private static Method lookupExecutorFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界连接处理池
+ * 平台线程模式：最多maxWorkers个线程，外加容量为queueCapacity的等待队列；
+ * 虚拟线程模式：每个连接一个虚拟线程，但同时处理的连接数不超过maxWorkers。
+ * 超出限制时submit()返回false，由调用方拒绝该连接（503）。
+ * NIO引擎也用它运行流式响应体的生产者（每个响应体占用一个线程直到生成结束）。
+ */
+public class WorkerPool {
+    private static final long IDLE_THREAD_TIMEOUT = 60;
+
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor platformExecutor;
+    private final Semaphore permits;
+    private final int maxWorkers;
+    private final AtomicLong rejected;
+
+    private WorkerPool(ExecutorService executor, ThreadPoolExecutor platformExecutor, Semaphore permits,
+            int maxWorkers) {
+        this.executor = executor;
+        this.platformExecutor = platformExecutor;
+        this.permits = permits;
+        this.maxWorkers = maxWorkers;
+        this.rejected = new AtomicLong();
+    }
+
+    /**
+     * 平台线程池：线程按需创建，空闲60秒后回收
+     */
+    public static WorkerPool platform(int maxWorkers, int queueCapacity) {
+        return platform(maxWorkers, queueCapacity, new WorkerThreadFactory());
+    }
+
+    /**
+     * 平台线程池，使用指定的线程工厂
+     */
+    public static WorkerPool platform(int maxWorkers, int queueCapacity, ThreadFactory threadFactory) {
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<>(queueCapacity)
+                : new SynchronousQueue<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxWorkers, maxWorkers,
+                IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS, queue, threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return new WorkerPool(executor, executor, null, maxWorkers);
+    }
+
+    /**
+     * 虚拟线程：由perTaskExecutor为每个任务创建线程，用信号量限制并发数
+     */
+    public static WorkerPool virtual(ExecutorService perTaskExecutor, int maxWorkers) {
+        return new WorkerPool(perTaskExecutor, null, new Semaphore(maxWorkers), maxWorkers);
+    }
+
+    /**
+     * 提交连接任务
+     *
+     * @return true 已接受（正在执行或排队），false 超出限制被拒绝
+     */
+    public boolean submit(Runnable task) {
+        if (permits != null) {
+            if (!permits.tryAcquire()) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                rejected.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 停止接受任务并中断正在执行的任务
+     */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 正在处理连接的工作线程数
+     */
+    public int getActive() {
+        if (platformExecutor != null) {
+            return platformExecutor.getActiveCount();
+        }
+        return maxWorkers - permits.availablePermits();
+    }
+
+    /**
+     * 等待工作线程的连接数（虚拟线程模式始终为0）
+     */
+    public int getQueued() {
+        return platformExecutor != null ? platformExecutor.getQueue().size() : 0;
+    }
+
+    /**
+     * 因超出限制被拒绝的连接总数
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public String report() {
+        return "[workers] active=" + getActive() + "/" + maxWorkers
+                + " queued=" + getQueued()
+                + " rejected=" + getRejected();
+    }
+
+    /**
+     * 工作线程命名为 worker-N，便于在线程转储中识别
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "worker-" + counter.incrementAndGet());
+        }
+    }
+}
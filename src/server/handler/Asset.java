@@ -0,0 +1,178 @@
+package server.handler;
+
+import common.EntityTag;
+import server.mime.MimeTypes;
+import server.response.ContentCoding;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 静态资源缓存中的一项（见AssetCache）
+ * 记录加载时文件的状态；文件变化后由AssetCache整项丢弃，不会原地修改，因此除压缩版本和实体标签外的字段都不可变。
+ * 一个缓存项对应文件的一个版本，实体标签每个版本只计算一次：内容在内存中（堆上或映射）时为内容摘要，
+ * 否则由文件标识、长度和修改时间组成，请求线程不会为了标签把大文件读一遍。
+ * 文件不存在也会缓存一项（exists()为false），扫描器反复请求不存在的路径时不再访问磁盘。
+ */
+public final class Asset {
+    // 缓存项除内容外的估算开销（对象头、路径、字段）
+    static final int OVERHEAD = 256;
+
+    private final String key;
+    private final Path file;
+    private final boolean exists;
+    private final long length;
+    private final long lastModified;
+    private final String mimeType;
+    // 文件内容；文件不存在、已映射或超过单个文件上限时为null，由处理器直接读文件
+    private final byte[] content;
+    // 中等大小文件的只读内存映射，在堆外，所有连接共享；没有映射时为null
+    private final ByteBuffer mapped;
+    // 文件标识（BasicFileAttributes.fileKey()，Unix上含inode），用于没有缓存内容的文件的实体标签；可为null
+    private final Object fileKey;
+    // 压缩版本，按ContentCoding.ordinal()索引，第一次需要时生成；无锁读写，请求线程不进入监视器
+    private final AtomicReferenceArray<byte[]> variants;
+    // 实体标签，第一次需要时计算，以volatile发布
+    private volatile String entityTag;
+
+    Asset(String key, Path file, boolean exists, long length, long lastModified, byte[] content) {
+        this(key, file, exists, length, lastModified, content, null, null);
+    }
+
+    Asset(String key, Path file, boolean exists, long length, long lastModified, byte[] content,
+            ByteBuffer mapped) {
+        this(key, file, exists, length, lastModified, content, mapped, null);
+    }
+
+    /**
+     * @param fileKey 文件标识，只用于没有缓存内容的文件，可为null
+     */
+    Asset(String key, Path file, boolean exists, long length, long lastModified, byte[] content,
+            ByteBuffer mapped, Object fileKey) {
+        this.key = key;
+        this.file = file;
+        this.exists = exists;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.mimeType = MimeTypes.getMimeType(file.getFileName() == null ? key : file.getFileName().toString());
+        this.content = content;
+        this.mapped = mapped;
+        this.fileKey = fileKey;
+        this.variants = new AtomicReferenceArray<>(ContentCoding.values().length);
+    }
+
+    /**
+     * 缓存键：以/开头的请求路径
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 是否为存在的普通文件
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * 修改时间（毫秒）
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * 缓存的文件内容；数组共享，调用方不能修改。没有缓存内容时返回null
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * 文件的只读内存映射；没有映射时返回null
+     * 返回共享的缓冲区，调用方应通过duplicate()取得自己的位置和界限后再读取或写出。
+     */
+    public ByteBuffer getMapped() {
+        return mapped;
+    }
+
+    /**
+     * 实体标签（含双引号），第一次调用时计算；文件不存在时返回null
+     * 不加锁：计算（摘要映射的内容时可能缺页读盘）期间不阻塞同一文件的其他请求，
+     * 并发的首次调用可能各算一次，结果相同。
+     */
+    public String getEntityTag() {
+        String tag = entityTag;
+        if (tag == null && exists) {
+            tag = computeEntityTag();
+            entityTag = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * 已生成的压缩版本；没有时返回null
+     */
+    public byte[] getVariant(ContentCoding coding) {
+        return variants.get(coding.ordinal());
+    }
+
+    /**
+     * 保存压缩版本（由AssetCache.putVariant()调用以计入占用）
+     *
+     * @return 新增的字节数；已有该版本时返回0
+     */
+    long setVariant(ContentCoding coding, byte[] data) {
+        return variants.compareAndSet(coding.ordinal(), null, data) ? data.length : 0;
+    }
+
+    private String computeEntityTag() {
+        if (content == null && mapped == null) {
+            // 没有缓存内容的大文件：摘要需要在首字节发出前把整个文件读一遍，改用元数据
+            return EntityTag.fromMetadata(fileKey, length, lastModified);
+        }
+        MessageDigest digest = EntityTag.newDigest();
+        if (content != null) {
+            digest.update(content);
+        } else {
+            digest.update(mapped.duplicate());
+        }
+        return EntityTag.strong(digest.digest());
+    }
+
+    /**
+     * 映射的字节数（不占用Java堆，单独计入映射上限）
+     */
+    long mappedBytes() {
+        return mapped != null ? mapped.capacity() : 0;
+    }
+
+    /**
+     * 在缓存中占用的堆字节数（内容和已生成的压缩版本）
+     */
+    long residentBytes() {
+        long bytes = OVERHEAD + key.length() * 2L + (content != null ? content.length : 0);
+        for (int i = 0; i < variants.length(); i++) {
+            byte[] variant = variants.get(i);
+            if (variant != null) {
+                bytes += variant.length;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,549 @@
+package server.handler;
+
+import server.response.ContentCoding;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 静态资源内存缓存
+ * - 按字节数设上限（文件内容 + 压缩版本 + 每项固定开销），超过后按最近最少使用(LRU)淘汰；
+ *   超过单个文件上限的文件只缓存元数据，内容由处理器每次读取；
+ * - 启用映射后（setMapping），大小在映射区间内的文件以只读MappedByteBuffer缓存：内容在堆外，
+ *   不增加GC扫描和复制的负担，命中时也不需要read系统调用；映射的字节数另设上限，同样按LRU淘汰；
+ * - 同一文件的并发未命中只有一个线程读盘，其余线程等待它的结果；
+ * - 通过WatchService监听资源目录（含子目录），文件创建、修改、删除时丢弃对应的缓存项，
+ *   命中时不再调用exists()/lastModified()；
+ * - 不存在的路径也缓存，直到该路径被创建：这些项放在单独的、按项数设上限的LRU表中，
+ *   不占用文件内容的字节预算，扫描器请求大量不同的路径时只会淘汰其他不存在的路径，不会挤掉热点文件；
+ * - 文件事件按键直接删除对应的项，只有目录事件（删除、移动、创建）才按前缀扫描。
+ * WatchService无法启动时（文件系统不支持）只合并并发读取，不缓存。
+ *
+ * 线程安全：缓存表和统计由lock保护，读盘和等待在锁外进行。
+ */
+public class AssetCache implements Closeable {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+    // 更小的文件复制到堆上更划算：映射至少占一页，建立和解除映射也有开销
+    public static final long DEFAULT_MAP_MIN_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_MAPPED_BYTES = 256L * 1024 * 1024;
+    // 缓存的不存在路径的最大项数
+    public static final int MAX_MISSING_ENTRIES = 4096;
+
+    private final Path root;
+    private final long maxBytes;
+    private final long maxFileSize;
+    // 映射区间[mapMinSize, mapMaxSize)和映射总量上限；maxMappedBytes为0时不映射
+    private long mapMinSize;
+    private long mapMaxSize;
+    private long maxMappedBytes;
+
+    // 不用对象监视器：虚拟线程在监视器上竞争时会固定(pin)载体线程
+    private final ReentrantLock lock = new ReentrantLock();
+    // 按访问顺序排列，第一个是最近最少使用的
+    private final LinkedHashMap<String, Asset> entries;
+    // 不存在的路径，同样按访问顺序排列，超过MAX_MISSING_ENTRIES时丢弃最久未访问的
+    private final LinkedHashMap<String, Asset> missing;
+    // 正在读取的路径
+    private final Map<String, CompletableFuture<Asset>> loading;
+    private long residentBytes;
+    private long mappedBytes;
+    private int mappedEntries;
+    // 每次失效加一；读取期间发生过失效的结果不放入缓存
+    private long generation;
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long evictions;
+    private long invalidations;
+
+    private final Map<WatchKey, Path> watchedDirs;
+    // 已监听目录的键，用于判断变化的路径是否为目录（删除后无法再查询文件类型）
+    private final Set<String> dirKeys;
+    private WatchService watchService;
+    private Thread watcher;
+    private volatile boolean watching;
+
+    /**
+     * @param root        资源根目录
+     * @param maxBytes    缓存占用上限（字节），为0时不缓存
+     * @param maxFileSize 缓存内容的单个文件上限（字节）
+     */
+    public AssetCache(Path root, long maxBytes, long maxFileSize) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+        this.missing = new LinkedHashMap<String, Asset>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Asset> eldest) {
+                return size() > MAX_MISSING_ENTRIES;
+            }
+        };
+        this.loading = new HashMap<>();
+        this.watchedDirs = new ConcurrentHashMap<>();
+        this.dirKeys = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * 启用内存映射（在start()之前调用）：长度在[minSize, maxSize)之间的文件映射到内存而不是复制到堆上
+     * 映射只用于缓存中的资源，缓存关闭时不映射（每次请求映射一次得不偿失）。
+     *
+     * @param minSize        映射的最小文件长度
+     * @param maxSize        映射的文件长度上限（不含），通常为transferTo发送的阈值
+     * @param maxMappedBytes 同时映射的字节数上限，为0时不映射
+     */
+    public void setMapping(long minSize, long maxSize, long maxMappedBytes) {
+        this.mapMinSize = minSize;
+        this.mapMaxSize = maxSize;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * 注册目录监听并启动监听线程；缓存关闭（maxBytes为0）时什么也不做
+     */
+    public void start() {
+        if (maxBytes <= 0 || watching) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(root);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Asset cache disabled, cannot watch " + root + ": " + e);
+            closeWatchService();
+            return;
+        }
+        watching = true;
+        watcher = new Thread(this::watch, "asset-cache-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * 停止监听并清空缓存
+     */
+    @Override
+    public void close() {
+        watching = false;
+        closeWatchService();
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        invalidateAll();
+    }
+
+    /**
+     * 取已缓存的资源（包括缓存的不存在项），不读取文件、不等待、不计入命中统计；未缓存或正在读取时返回null
+     *
+     * @param path 以/开头、不含".."的请求路径
+     */
+    public Asset peek(String path) {
+        String key = canonicalKey(path);
+        lock.lock();
+        try {
+            Asset asset = entries.get(key);
+            return asset != null ? asset : missing.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取路径对应的资源；未命中时读取文件（或等待其他线程正在进行的读取）
+     *
+     * @param path 以/开头、不含".."的请求路径
+     */
+    public Asset get(String path) throws IOException {
+        String key = canonicalKey(path);
+        CompletableFuture<Asset> load;
+        boolean owner = false;
+        long startGeneration;
+        lock.lock();
+        try {
+            Asset asset = entries.get(key);
+            if (asset == null) {
+                asset = missing.get(key);
+            }
+            if (asset != null) {
+                hits++;
+                return asset;
+            }
+            load = loading.get(key);
+            if (load != null) {
+                coalesced++;
+            } else {
+                misses++;
+                load = new CompletableFuture<>();
+                loading.put(key, load);
+                owner = true;
+            }
+            startGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+        if (owner) {
+            return load(key, load, startGeneration);
+        }
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * 保存资源的压缩版本；资源仍在缓存中时计入占用并按需淘汰
+     */
+    public void putVariant(Asset asset, ContentCoding coding, byte[] data) {
+        lock.lock();
+        try {
+            long added = asset.setVariant(coding, data);
+            if (added > 0 && entries.get(asset.getKey()) == asset) {
+                residentBytes += added;
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否在缓存资源（监听已启动）
+     */
+    public boolean isEnabled() {
+        return watching;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * 统计（JSON），供 /api/stats 使用
+     * hitRatio把等待其他线程读取的请求也算作命中（它们没有读盘）
+     */
+    public String statsJson() {
+        lock.lock();
+        try {
+            long total = hits + coalesced + misses;
+            double hitRatio = total == 0 ? 0 : (double) (hits + coalesced) / total;
+            return "{\"enabled\":" + watching
+                    + ",\"maxBytes\":" + maxBytes
+                    + ",\"residentBytes\":" + residentBytes
+                    + ",\"entries\":" + entries.size()
+                    + ",\"missingEntries\":" + missing.size()
+                    + ",\"hits\":" + hits
+                    + ",\"misses\":" + misses
+                    + ",\"coalesced\":" + coalesced
+                    + ",\"hitRatio\":" + String.format("%.4f", hitRatio)
+                    + ",\"maxMappedBytes\":" + maxMappedBytes
+                    + ",\"mappedBytes\":" + mappedBytes
+                    + ",\"mappedEntries\":" + mappedEntries
+                    + ",\"evictions\":" + evictions
+                    + ",\"invalidations\":" + invalidations
+                    + "}";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 未命中且没有其他线程在读取时由当前线程读取：读完后放入缓存并唤醒等待的线程
+     * 读取失败时（包括Error）同样移出loading并唤醒等待的线程，它们收到IOException
+     */
+    private Asset load(String key, CompletableFuture<Asset> load, long startGeneration) throws IOException {
+        Asset asset;
+        try {
+            asset = read(key);
+        } catch (Throwable e) {
+            // 包括Error（如OutOfMemoryError）：否则键一直留在loading中，等待的线程永远阻塞
+            lock.lock();
+            try {
+                loading.remove(key);
+            } finally {
+                lock.unlock();
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        lock.lock();
+        try {
+            loading.remove(key);
+            if (watching && generation == startGeneration) {
+                insert(asset);
+            }
+        } finally {
+            lock.unlock();
+            load.complete(asset);
+        }
+        return asset;
+    }
+
+    private Asset read(String key) throws IOException {
+        Path file;
+        try {
+            file = root.resolve(key.substring(1)).normalize();
+        } catch (InvalidPathException e) {
+            // 文件系统不允许的字符（如NUL）
+            return new Asset(key, root, false, 0, 0, null);
+        }
+        if (!file.startsWith(root)) {
+            return new Asset(key, file, false, 0, 0, null);
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return new Asset(key, file, false, 0, 0, null);
+        }
+        if (!attributes.isRegularFile()) {
+            return new Asset(key, file, false, 0, 0, null);
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (shouldMap(attributes.size())) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // 长度以打开后的文件为准，映射不超出文件末尾
+                long size = channel.size();
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return new Asset(key, file, true, size, lastModified, null, mapped);
+            }
+        }
+        if (attributes.size() > maxFileSize) {
+            return new Asset(key, file, true, attributes.size(), lastModified, null, null, attributes.fileKey());
+        }
+        // 读取期间文件可能被改写，长度以实际读到的内容为准
+        byte[] content = Files.readAllBytes(file);
+        return new Asset(key, file, true, content.length, lastModified, content);
+    }
+
+    /**
+     * 只映射缓存中的资源；单个文件超过映射总量上限时按普通文件处理
+     */
+    private boolean shouldMap(long size) {
+        return watching && maxMappedBytes > 0 && size >= mapMinSize && size < mapMaxSize && size <= maxMappedBytes;
+    }
+
+    private void insert(Asset asset) {
+        if (!asset.exists()) {
+            // 一个键只在两张表之一中
+            Asset old = entries.remove(asset.getKey());
+            if (old != null) {
+                release(old);
+            }
+            missing.put(asset.getKey(), asset);
+            return;
+        }
+        missing.remove(asset.getKey());
+        long bytes = asset.residentBytes();
+        if (bytes > maxBytes) {
+            return;
+        }
+        Asset old = entries.put(asset.getKey(), asset);
+        if (old != null) {
+            release(old);
+        }
+        residentBytes += bytes;
+        if (asset.mappedBytes() > 0) {
+            mappedBytes += asset.mappedBytes();
+            mappedEntries++;
+        }
+        evict();
+    }
+
+    /**
+     * 按LRU淘汰，直到堆占用和映射量都不超过上限；只有映射量超限时只淘汰映射的项
+     */
+    private void evict() {
+        Iterator<Asset> it = entries.values().iterator();
+        while ((residentBytes > maxBytes || mappedBytes > maxMappedBytes) && it.hasNext()) {
+            Asset asset = it.next();
+            if (residentBytes > maxBytes || asset.mappedBytes() > 0) {
+                release(asset);
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * 从占用中扣除已移出缓存表的项
+     * 映射在缓冲区不再被引用后由GC解除，正在写出它的连接不受影响。
+     */
+    private void release(Asset asset) {
+        residentBytes -= asset.residentBytes();
+        if (asset.mappedBytes() > 0) {
+            mappedBytes -= asset.mappedBytes();
+            mappedEntries--;
+        }
+    }
+
+    /**
+     * 丢弃路径的缓存项；路径是目录时连同其下所有路径（目录被删除、移动或创建时子路径一起失效）
+     *
+     * @param directory 路径是（或曾经是）监听中的目录
+     */
+    private void invalidate(String key, boolean directory) {
+        lock.lock();
+        try {
+            generation++;
+            invalidations++;
+            Asset old = entries.remove(key);
+            if (old != null) {
+                release(old);
+            }
+            missing.remove(key);
+            if (!directory) {
+                return;
+            }
+            String prefix = key + "/";
+            Iterator<Map.Entry<String, Asset>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Asset> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    release(entry.getValue());
+                    it.remove();
+                }
+            }
+            missing.keySet().removeIf(k -> k.startsWith(prefix));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void invalidateAll() {
+        lock.lock();
+        try {
+            generation++;
+            invalidations++;
+            entries.clear();
+            missing.clear();
+            residentBytes = 0;
+            mappedBytes = 0;
+            mappedEntries = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 监听线程：把目录事件转换为缓存失效
+     */
+    private void watch() {
+        while (watching) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    // 丢失了事件，无法知道哪些文件变了
+                    invalidateAll();
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                String childKey = keyOf(child);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(child);
+                    } catch (IOException e) {
+                        System.err.println("Failed to watch " + child + ": " + e.getMessage());
+                    }
+                }
+                boolean directory = dirKeys.contains(childKey);
+                if (directory && event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    String prefix = childKey + "/";
+                    dirKeys.removeIf(k -> k.equals(childKey) || k.startsWith(prefix));
+                }
+                invalidate(childKey, directory);
+            }
+            if (!key.reset()) {
+                // 目录已删除
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 注册目录及其全部子目录（WatchService只监听直接子项）
+     */
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.put(key, dir);
+                dirKeys.add(keyOf(dir));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    private String keyOf(Path file) {
+        return "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 同一文件的不同写法（//a.js、/./a.js）映射到同一个键，失效时才能按文件路径找到它们
+     */
+    private String canonicalKey(String path) {
+        if (path.indexOf('\\') == -1 && !path.contains("//") && !path.contains("/./") && !path.endsWith("/.")) {
+            return path;
+        }
+        int start = 0;
+        while (start < path.length() && (path.charAt(start) == '/' || path.charAt(start) == '\\')) {
+            start++;
+        }
+        try {
+            // 去掉全部前导斜杠，否则resolve()会把剩余部分当作绝对路径
+            return keyOf(root.resolve(path.substring(start)).normalize());
+        } catch (InvalidPathException e) {
+            return path;
+        }
+    }
+}
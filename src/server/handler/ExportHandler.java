@@ -0,0 +1,87 @@
+package server.handler;
+
+import server.request.HttpRequest;
+import server.response.HttpResponse;
+import server.response.ResponseBuilder;
+import server.router.RouteHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 数据导出处理器（流式响应示例）
+ * GET /api/export?rows=100000&delay=0&mode=stream
+ * - rows：导出的行数
+ * - delay：每生成1000行暂停的毫秒数，模拟逐批查询的慢数据源
+ * - mode：stream（默认）边生成边以chunked发送，内存占用固定；buffer 先在内存中生成完整的CSV再发送，用于对比首字节时间
+ */
+public class ExportHandler implements RouteHandler {
+    private static final int MAX_ROWS = 10_000_000;
+    private static final int MAX_DELAY = 1000;
+    private static final int ROWS_PER_BATCH = 1000;
+    private static final byte[] CSV_HEADER = "id,name,email,score\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        int rows;
+        int delay;
+        try {
+            rows = parse(request.getQueryParam("rows"), 10_000, MAX_ROWS);
+            delay = parse(request.getQueryParam("delay"), 0, MAX_DELAY);
+        } catch (NumberFormatException e) {
+            return ResponseBuilder.badRequest("rows和delay必须是非负整数");
+        }
+        String mode = request.getQueryParam("mode");
+
+        if ("buffer".equals(mode)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                writeCsv(out, rows, delay);
+            } catch (IOException e) {
+                return ResponseBuilder.internalServerError(e.getMessage());
+            }
+            return ResponseBuilder.binary(out.toByteArray(), "text/csv; charset=UTF-8");
+        }
+        return ResponseBuilder.stream("text/csv; charset=UTF-8", out -> writeCsv(out, rows, delay));
+    }
+
+    private static void writeCsv(OutputStream out, int rows, int delay) throws IOException {
+        out.write(CSV_HEADER);
+        StringBuilder line = new StringBuilder(64);
+        for (int i = 1; i <= rows; i++) {
+            line.setLength(0);
+            line.append(i).append(",user_").append(i).append(",user_").append(i).append("@example.com,")
+                    .append(i * 37 % 100).append('\n');
+            for (int j = 0; j < line.length(); j++) {
+                out.write(line.charAt(j));
+            }
+            if (delay > 0 && i % ROWS_PER_BATCH == 0) {
+                // 一批数据生成完：先把已生成的行发给客户端
+                out.flush();
+                sleep(delay);
+            }
+        }
+    }
+
+    private static int parse(String value, int defaultValue, int max) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        int result = Integer.parseInt(value);
+        if (result < 0) {
+            throw new NumberFormatException(value);
+        }
+        return Math.min(result, max);
+    }
+
+    private static void sleep(int millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted");
+        }
+    }
+}
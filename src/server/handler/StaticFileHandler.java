@@ -1,32 +1,78 @@
 package server.handler;
 
+import common.EntityTag;
+import common.HttpDate;
+import common.HttpHeaders;
 import common.HttpMethod;
 import common.HttpStatus;
-import server.mime.MimeTypes;
 import server.request.HttpRequest;
+import server.response.ContentCoding;
 import server.response.HttpResponse;
 import server.response.ResponseBuilder;
+import server.response.ResponseCompressor;
 import server.router.RouteHandler;
 
-import java.io.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * 静态文件处理器
- * 处理静态资源请求，支持304缓存机制
+ * 处理静态资源请求，支持304缓存机制（ETag/If-None-Match 优先，其次 Last-Modified/If-Modified-Since）
+ *
+ * 文件内容和元数据来自AssetCache：命中时不访问磁盘，文件变化由目录监听发现。
+ * 客户端接受gzip/deflate时发送压缩版本：每个缓存资源的每种编码只压缩一次（最高压缩级别），
+ * 与资源一起缓存、一起失效；超过缓存单个文件上限的文件与动态响应一样由Router每次压缩。
+ *
+ * 内存映射的中等大小文件（见AssetCache.setMapping）以映射缓冲区的副本(duplicate)作为响应体，
+ * 由连接直接写到通道，内容不复制到堆上；其压缩版本与普通缓存文件一样保存在资源上。
+ * 没有缓存内容且不小于sendfileThreshold的大文件不读入内存：响应体为FileRegion，
+ * 由连接以FileChannel.transferTo()直接从文件发送到套接字，这类文件不压缩。
+ *
+ * 文件旁边有预压缩的同名.gz文件（如 app.js.gz）且客户端接受gzip时，直接发送.gz文件的内容，
+ * Content-Type取原文件名对应的类型，运行时不再压缩（包括超过缓存上限、本来不会压缩的大文件）。
+ * .gz文件本身也经过AssetCache：存在与否都会缓存（不存在的记为负缓存项），由目录监听失效，
+ * 查找不增加每次请求的文件系统访问。比原文件旧的.gz文件视为过期，不使用。
  */
 public class StaticFileHandler implements RouteHandler {
-    private final String rootDirectory;
-    private final SimpleDateFormat dateFormat;
+    // 默认的transferTo发送阈值，与资源缓存的单个文件上限相同
+    public static final long DEFAULT_SENDFILE_THRESHOLD = AssetCache.DEFAULT_MAX_FILE_SIZE;
+    // 预压缩文件的后缀
+    public static final String PRECOMPRESSED_SUFFIX = ".gz";
+
+    // 响应压缩，为null时不压缩
+    private final ResponseCompressor compressor;
+    private final AssetCache cache;
+    private final long sendfileThreshold;
 
     public StaticFileHandler(String rootDirectory) {
-        this.rootDirectory = rootDirectory;
-        this.dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-        this.dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        this(rootDirectory, null);
+    }
+
+    /**
+     * 使用默认大小的资源缓存
+     */
+    public StaticFileHandler(String rootDirectory, ResponseCompressor compressor) {
+        this(new AssetCache(Paths.get(rootDirectory), AssetCache.DEFAULT_MAX_BYTES,
+                AssetCache.DEFAULT_MAX_FILE_SIZE), compressor);
+        cache.start();
+    }
+
+    public StaticFileHandler(AssetCache cache, ResponseCompressor compressor) {
+        this(cache, compressor, DEFAULT_SENDFILE_THRESHOLD);
+    }
+
+    /**
+     * @param cache             资源缓存（决定资源根目录），由调用方启动和关闭
+     * @param compressor        响应压缩，为null时不压缩
+     * @param sendfileThreshold 没有缓存内容的文件不小于该长度时以transferTo发送
+     */
+    public StaticFileHandler(AssetCache cache, ResponseCompressor compressor, long sendfileThreshold) {
+        this.compressor = compressor;
+        this.cache = cache;
+        this.sendfileThreshold = sendfileThreshold;
     }
 
     @Override
@@ -36,93 +82,295 @@ public class StaticFileHandler implements RouteHandler {
             return ResponseBuilder.methodNotAllowed();
         }
 
-        String path = request.getPath();
-
-        // 默认首页
-        if ("/".equals(path)) {
-            path = "/index.html";
-        }
-
+        String path = assetPath(request);
         // 安全检查：防止目录遍历攻击
-        if (path.contains("..")) {
+        if (path == null) {
             return ResponseBuilder.badRequest("Invalid path");
         }
 
-        // 构建文件路径
-        File file = new File(rootDirectory, path);
+        Asset asset;
+        try {
+            asset = cache.get(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseBuilder.internalServerError("Failed to read file");
+        }
 
         // 文件不存在
-        if (!file.exists() || !file.isFile()) {
+        if (!asset.exists()) {
             return ResponseBuilder.notFound();
         }
 
-        // 检查是否需要返回304
-        String ifModifiedSince = request.getHeader("If-Modified-Since");
         // HTTP日期格式只精确到秒，需要将毫秒部分截断
-        long lastModifiedMs = (file.lastModified() / 1000) * 1000;
+        long lastModifiedMs = (asset.getLastModified() / 1000) * 1000;
         Date lastModified = new Date(lastModifiedMs);
 
-        if (ifModifiedSince != null) {
+        String mimeType = asset.getMimeType();
+        byte[] content = asset.getContent();
+        ByteBuffer mapped = asset.getMapped();
+        long length = asset.getLength();
+        boolean inMemory = isInMemory(asset);
+        // 大文件：内容不进入Java堆，由连接从文件直接发送，不压缩
+        boolean sendfile = !inMemory && length >= sendfileThreshold;
+        boolean compressible = compressor != null && !sendfile && compressor.isCompressible(mimeType, length);
+
+        // 先确定发送哪个表示：压缩版本与原始内容的实体标签不同
+        Asset sidecar = precompressed(asset);
+        boolean useSidecar = sidecar != null
+                && ContentCoding.accepts(request.getHeader(HttpHeaders.ACCEPT_ENCODING), ContentCoding.GZIP);
+        // 可压缩或有预压缩文件的资源无论发送哪个表示都带 Vary: Accept-Encoding
+        boolean varies = compressible || sidecar != null;
+        ContentCoding coding = compressible && !useSidecar ? compressor.negotiate(request, mimeType, length) : null;
+        String entityTag = useSidecar ? null : asset.getEntityTag();
+        String representationTag;
+        if (useSidecar) {
+            // 预压缩文件是另一份内容，直接使用它自己的实体标签
+            representationTag = sidecar.getEntityTag();
+        } else {
+            representationTag = entityTag == null || coding == null ? entityTag
+                    : EntityTag.withCoding(entityTag, coding.token());
+        }
+
+        // 检查是否需要返回304
+        if (isNotModified(request, representationTag, lastModified)) {
+            HttpResponse response = ResponseBuilder.notModified();
+            response.setLastModified(lastModified);
+            if (representationTag != null) {
+                response.setHeader(HttpHeaders.ETAG, representationTag);
+            }
+            if (varies) {
+                ResponseCompressor.addVary(response);
+            }
+            return response;
+        }
+
+        if (useSidecar) {
+            HttpResponse response = serveAsIs(sidecar, mimeType);
+            if (response.getStatus() == HttpStatus.OK) {
+                compressor.recordPrecompressed();
+                setValidators(response, representationTag, lastModified);
+                // 已设置Content-Encoding，Router不会再次压缩
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, ContentCoding.GZIP.token());
+                ResponseCompressor.addVary(response);
+            }
+            return response;
+        }
+        if (sendfile) {
+            HttpResponse response = ResponseBuilder.file(asset.getFile(), length, mimeType);
+            setValidators(response, entityTag, lastModified);
+            if (varies) {
+                ResponseCompressor.addVary(response);
+            }
+            return response;
+        }
+        if (!inMemory) {
+            // 超过缓存单个文件上限，每次从磁盘读取；压缩由Router完成，并为实体标签加上编码名
             try {
-                Date clientDate = dateFormat.parse(ifModifiedSince);
-                // 如果文件没有修改（客户端时间 >= 服务器文件时间），返回304
-                if (lastModified.getTime() <= clientDate.getTime()) {
-                    HttpResponse response = ResponseBuilder.notModified();
-                    response.setLastModified(lastModified);
-                    return response;
-                }
-            } catch (ParseException e) {
+                content = Files.readAllBytes(asset.getFile());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return ResponseBuilder.internalServerError("Failed to read file");
+            }
+            HttpResponse response = ResponseBuilder.binary(content, mimeType);
+            setValidators(response, entityTag, lastModified);
+            if (sidecar != null) {
+                ResponseCompressor.addVary(response);
+            }
+            return response;
+        }
+
+        byte[] encoded = coding == null ? null : compressedVariant(asset, coding);
+        // 压缩后没有变小的文件按原样发送（仍使用协商结果对应的标签，304判断与之一致）
+        boolean useEncoded = encoded != null && encoded.length < length;
+
+        HttpResponse response;
+        if (useEncoded) {
+            response = ResponseBuilder.binary(encoded, mimeType);
+        } else if (content != null) {
+            response = ResponseBuilder.binary(content, mimeType);
+        } else {
+            // 每个响应使用自己的position，映射本身由所有连接共享
+            response = ResponseBuilder.binary(mapped.duplicate(), mimeType);
+        }
+        setValidators(response, representationTag, lastModified);
+        if (useEncoded) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, coding.token());
+        }
+        if (varies) {
+            ResponseCompressor.addVary(response);
+        }
+        return response;
+    }
+
+    /**
+     * 资源、预压缩文件的查找结果和所需的压缩版本都已缓存时不访问磁盘，可以在NIO事件循环上直接处理；
+     * 否则需要读取文件（或等待其他请求的读取、首次压缩），交给处理器线程池
+     */
+    @Override
+    public boolean mayBlock(HttpRequest request) {
+        String path = assetPath(request);
+        if (request.getMethod() != HttpMethod.GET || path == null) {
+            return false;
+        }
+        Asset asset = cache.peek(path);
+        if (asset == null) {
+            return true;
+        }
+        if (!asset.exists()) {
+            return false;
+        }
+        boolean compressing = compressor != null && compressor.isEnabled();
+        if (compressing && !asset.getKey().endsWith(PRECOMPRESSED_SUFFIX)) {
+            Asset sidecar = cache.peek(asset.getKey() + PRECOMPRESSED_SUFFIX);
+            if (sidecar == null) {
+                return true;
+            }
+            if (sidecar.exists() && sidecar.getLastModified() >= asset.getLastModified()
+                    && ContentCoding.accepts(request.getHeader(HttpHeaders.ACCEPT_ENCODING), ContentCoding.GZIP)) {
+                // 发送预压缩文件，原文件既不读取也不压缩
+                return readsFromDisk(sidecar);
+            }
+        }
+        if (readsFromDisk(asset)) {
+            return true;
+        }
+        if (!compressing || !isInMemory(asset)) {
+            return false;
+        }
+        ContentCoding coding = compressor.negotiate(request, asset.getMimeType(), asset.getLength());
+        return coding != null && asset.getVariant(coding) == null;
+    }
+
+    /**
+     * 超过缓存上限、又小于sendfile阈值的文件每次读入内存
+     */
+    private boolean readsFromDisk(Asset asset) {
+        return !isInMemory(asset) && asset.getLength() < sendfileThreshold;
+    }
+
+    /**
+     * 请求对应的资源路径（"/"为首页）；包含".."时返回null
+     */
+    private static String assetPath(HttpRequest request) {
+        String path = request.getPath();
+        // 默认首页
+        if ("/".equals(path)) {
+            return "/index.html";
+        }
+        return path.contains("..") ? null : path;
+    }
+
+    /**
+     * 条件请求是否可以回复304
+     * If-None-Match优先（RFC 9110 13.2.2）：存在时忽略If-Modified-Since，
+     * 同一秒内的修改和只改动修改时间的重新部署都由内容标签判断。
+     *
+     * @param entityTag 所选表示的实体标签，没有时为null
+     */
+    private static boolean isNotModified(HttpRequest request, String entityTag, Date lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // 没有标签时只有"*"能匹配（资源存在）
+            return entityTag != null ? EntityTag.matches(ifNoneMatch, entityTag)
+                    : EntityTag.ANY.equals(ifNoneMatch.trim());
+        }
+
+        String ifModifiedSince = request.getHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            long clientTime = HttpDate.parse(ifModifiedSince);
+            if (clientTime == -1) {
                 // 解析失败，忽略If-Modified-Since头
                 System.err.println("Failed to parse If-Modified-Since: " + ifModifiedSince);
+            } else if (lastModified.getTime() <= clientTime) {
+                // 如果文件没有修改（客户端时间 >= 服务器文件时间），返回304
+                return true;
             }
         }
+        return false;
+    }
 
-        // 读取文件内容
-        try {
-            byte[] content = readFile(file);
-            String mimeType = MimeTypes.getMimeType(file.getName());
-
-            HttpResponse response = ResponseBuilder.binary(content, mimeType);
-            response.setLastModified(lastModified);
+    private static boolean isInMemory(Asset asset) {
+        return asset.getContent() != null || asset.getMapped() != null;
+    }
 
-            return response;
+    /**
+     * 资源的预压缩文件（同目录下的"文件名.gz"）；压缩关闭、文件本身就是.gz、
+     * 没有预压缩文件或它比原文件旧（原文件更新后没有重新生成）时返回null
+     * 查找结果由AssetCache缓存，包括"不存在"。
+     */
+    private Asset precompressed(Asset asset) {
+        if (compressor == null || !compressor.isEnabled() || asset.getKey().endsWith(PRECOMPRESSED_SUFFIX)) {
+            return null;
+        }
+        Asset sidecar;
+        try {
+            sidecar = cache.get(asset.getKey() + PRECOMPRESSED_SUFFIX);
         } catch (IOException e) {
+            // 读不了预压缩文件时退回原文件
             e.printStackTrace();
-            return ResponseBuilder.internalServerError("Failed to read file");
+            return null;
+        }
+        if (!sidecar.exists() || sidecar.getLastModified() < asset.getLastModified()) {
+            return null;
         }
+        return sidecar;
     }
 
     /**
-     * 读取文件内容
+     * 按原样发送资源内容（不压缩），Content-Type由调用方指定
      */
-    private byte[] readFile(File file) throws IOException {
-        FileInputStream fis = null;
-        ByteArrayOutputStream baos = null;
-
+    private HttpResponse serveAsIs(Asset asset, String mimeType) {
+        if (asset.getContent() != null) {
+            return ResponseBuilder.binary(asset.getContent(), mimeType);
+        }
+        if (asset.getMapped() != null) {
+            return ResponseBuilder.binary(asset.getMapped().duplicate(), mimeType);
+        }
+        if (asset.getLength() >= sendfileThreshold) {
+            return ResponseBuilder.file(asset.getFile(), asset.getLength(), mimeType);
+        }
         try {
-            fis = new FileInputStream(file);
-            baos = new ByteArrayOutputStream();
+            return ResponseBuilder.binary(Files.readAllBytes(asset.getFile()), mimeType);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseBuilder.internalServerError("Failed to read file");
+        }
+    }
 
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
-            }
+    private static void setValidators(HttpResponse response, String entityTag, Date lastModified) {
+        response.setLastModified(lastModified);
+        if (entityTag != null) {
+            response.setHeader(HttpHeaders.ETAG, entityTag);
+        }
+    }
 
-            return baos.toByteArray();
-        } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                }
-            }
-            if (baos != null) {
-                try {
-                    baos.close();
-                } catch (IOException e) {
-                }
-            }
+    /**
+     * 资源缓存
+     */
+    public AssetCache getCache() {
+        return cache;
+    }
+
+    /**
+     * 取资源的压缩版本，没有时压缩并保存到资源上
+     * 并发的首次请求可能各压缩一次，只保留先保存的结果。
+     */
+    private byte[] compressedVariant(Asset asset, ContentCoding coding) {
+        byte[] data = asset.getVariant(coding);
+        if (data != null) {
+            compressor.recordCacheHit();
+            return data;
+        }
+        // 资源不在缓存中时（缓存关闭）结果只用这一次，使用较快的压缩级别
+        int level = cache.isEnabled() ? ResponseCompressor.CACHED_LEVEL : ResponseCompressor.DYNAMIC_LEVEL;
+        byte[] content = asset.getContent();
+        if (content == null) {
+            // 映射的文件：压缩输入只需一次性复制，压缩结果随资源缓存
+            content = new byte[(int) asset.getLength()];
+            asset.getMapped().duplicate().get(content);
         }
+        data = compressor.compress(coding, content, level);
+        cache.putVariant(asset, coding, data);
+        return data;
     }
 }
@@ -0,0 +1,73 @@
+package server.handler;
+
+import server.request.HttpRequest;
+import server.request.MultipartParser;
+import server.request.Part;
+import server.response.HttpResponse;
+import server.response.ResponseBuilder;
+import server.router.RouteHandler;
+
+import java.io.IOException;
+
+/**
+ * 文件上传处理器
+ * POST /api/upload
+ * 请求体: multipart/form-data
+ *
+ * 逐个读取上传的部分并返回每个部分的名称、文件名和大小；大文件在解析过程中写入临时文件，
+ * 本示例不保留上传内容，处理完后临时文件随解析器关闭而删除。
+ */
+public class UploadHandler implements RouteHandler {
+
+    /**
+     * 不是multipart请求时在传输请求体之前拒绝
+     */
+    @Override
+    public HttpResponse precheck(HttpRequest request) {
+        if (MultipartParser.boundaryOf(request.getContentType()) == null) {
+            return ResponseBuilder.badRequest("请求体必须是multipart/form-data");
+        }
+        return null;
+    }
+
+    /**
+     * 大的部分在解析时写入临时文件
+     */
+    @Override
+    public boolean mayBlock(HttpRequest request) {
+        return true;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        MultipartParser parser = request.getMultipartParser();
+        if (parser == null) {
+            return ResponseBuilder.badRequest("请求体必须是multipart/form-data");
+        }
+
+        StringBuilder parts = new StringBuilder();
+        long total = 0;
+        try (MultipartParser p = parser) {
+            Part part;
+            while ((part = p.next()) != null) {
+                if (parts.length() > 0) {
+                    parts.append(',');
+                }
+                parts.append("{\"name\":\"").append(JsonUtils.escapeJson(part.getName())).append('"');
+                if (part.getFileName() != null) {
+                    parts.append(",\"fileName\":\"").append(JsonUtils.escapeJson(part.getFileName())).append('"');
+                }
+                parts.append(",\"size\":").append(part.getSize())
+                        .append(",\"inMemory\":").append(part.isInMemory()).append('}');
+                total += part.getSize();
+            }
+        } catch (IOException e) {
+            // 请求体超过上限时由连接处理器改为413
+            return ResponseBuilder.badRequest("上传内容格式错误: " + e.getMessage());
+        }
+
+        String json = "{\"code\":200,\"message\":\"上传成功\",\"totalSize\":" + total
+                + ",\"parts\":[" + parts + "]}";
+        return ResponseBuilder.json(json);
+    }
+}
@@ -0,0 +1,98 @@
+package server.keepalive;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 被KeepAliveManager跟踪的连接
+ * 连接在三种状态之间切换：
+ * - idle()：上一个响应已写出，等待下一个请求，空闲超过超时时间后关闭
+ * - reading()：正在接收请求（请求头或请求体），从请求开始时计时，读到部分数据不会延长期限；
+ *   received() 报告的字节按最低速率折算为额外时间，大请求体只要持续以不低于该速率到达就不会超时
+ * - busy()：处理器正在生成响应或响应正在写出，期间不会超时
+ * 关闭时调用 close()。
+ */
+public class IdleConnection {
+    private final KeepAliveManager manager;
+    private final Runnable onIdle;
+    private final AtomicBoolean closed;
+
+    static final int IDLE = 0;
+    static final int READING = 1;
+    static final int BUSY = 2;
+
+    volatile long lastActive;
+    volatile int state;
+    // 当前请求开始接收的时间，以及之后收到的字节数（只由连接所在线程写入）
+    volatile long requestStart;
+    volatile long receivedBytes;
+    volatile boolean expired;
+    volatile TimingWheel.Timeout timeout;
+
+    IdleConnection(KeepAliveManager manager, Runnable onIdle) {
+        this.manager = manager;
+        this.onIdle = onIdle;
+        this.closed = new AtomicBoolean();
+        this.lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * 开始接收一个请求；已在接收中时不重新计时
+     */
+    public void reading() {
+        if (state != READING) {
+            requestStart = System.currentTimeMillis();
+            receivedBytes = 0;
+            state = READING;
+        }
+    }
+
+    /**
+     * 接收请求期间从连接读到了bytes字节
+     */
+    public void received(int bytes) {
+        if (state == READING) {
+            receivedBytes += bytes;
+        }
+    }
+
+    /**
+     * 开始处理请求（或有待写出的数据），期间不会超时
+     */
+    public void busy() {
+        lastActive = System.currentTimeMillis();
+        state = BUSY;
+    }
+
+    /**
+     * 请求处理完毕，开始计算空闲时间
+     */
+    public void idle() {
+        lastActive = System.currentTimeMillis();
+        state = IDLE;
+    }
+
+    /**
+     * 是否因空闲超时被关闭
+     */
+    public boolean isExpired() {
+        return expired;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * 连接关闭，停止跟踪（可重复调用）
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            manager.unregister(this);
+        }
+    }
+
+    void expire() {
+        expired = true;
+        onIdle.run();
+    }
+}
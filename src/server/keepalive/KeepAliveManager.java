@@ -0,0 +1,134 @@
+package server.keepalive;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 长连接空闲管理
+ * 所有连接共用一个TimingWheel，到期时检查连接是否仍然空闲，是则关闭，否则按剩余时间重新调度。
+ * 正在接收的请求同样受超时限制：请求头或请求体迟迟收不完（如每秒只发送几个字节）时关闭连接，
+ * 请求体按 MIN_RECEIVE_RATE 折算额外时间；只有生成和写出响应期间不计时。
+ * 连接数超过上限的一半后，空闲超时随连接数线性缩短，直到minTimeout，避免空闲连接占满资源。
+ * 响应中 Keep-Alive 头的 timeout 取自 currentTimeoutSeconds()，与实际生效的超时一致。
+ */
+public class KeepAliveManager {
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 1024;
+    // 连接数达到上限的该比例后开始缩短超时
+    private static final double SHRINK_THRESHOLD = 0.5;
+    // 接收请求的最低速率（字节/秒）：每收到这么多字节，请求的接收期限延长1秒
+    private static final long MIN_RECEIVE_RATE = 32 * 1024;
+
+    private final TimingWheel wheel;
+    private final int timeoutMillis;
+    private final int minTimeoutMillis;
+    private final int maxRequests;
+    private final int maxConnections;
+    private final AtomicInteger connections;
+    private final AtomicLong expired;
+
+    /**
+     * @param timeoutMillis    空闲超时
+     * @param minTimeoutMillis 连接数接近上限时的最短空闲超时
+     * @param maxRequests      每个连接最多处理的请求数
+     * @param maxConnections   连接数上限（用于计算负载）
+     */
+    public KeepAliveManager(int timeoutMillis, int minTimeoutMillis, int maxRequests, int maxConnections) {
+        this.wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE);
+        this.timeoutMillis = timeoutMillis;
+        this.minTimeoutMillis = Math.min(minTimeoutMillis, timeoutMillis);
+        this.maxRequests = maxRequests;
+        this.maxConnections = maxConnections;
+        this.connections = new AtomicInteger();
+        this.expired = new AtomicLong();
+        this.wheel.start();
+    }
+
+    /**
+     * 开始跟踪一个连接
+     *
+     * @param onIdle 连接空闲超时时调用（在时间轮线程中执行）
+     */
+    public IdleConnection register(Runnable onIdle) {
+        connections.incrementAndGet();
+        IdleConnection connection = new IdleConnection(this, onIdle);
+        connection.timeout = wheel.schedule(currentTimeoutMillis(), () -> check(connection));
+        return connection;
+    }
+
+    /**
+     * 当前生效的空闲超时（毫秒）
+     */
+    public int currentTimeoutMillis() {
+        double load = (double) connections.get() / maxConnections;
+        if (load <= SHRINK_THRESHOLD) {
+            return timeoutMillis;
+        }
+        double ratio = Math.min(1.0, (load - SHRINK_THRESHOLD) / (1.0 - SHRINK_THRESHOLD));
+        return (int) (timeoutMillis - (timeoutMillis - minTimeoutMillis) * ratio);
+    }
+
+    /**
+     * 当前生效的空闲超时（秒），用于 Keep-Alive 响应头
+     */
+    public int currentTimeoutSeconds() {
+        return Math.max(1, currentTimeoutMillis() / 1000);
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    public void stop() {
+        wheel.stop();
+    }
+
+    void unregister(IdleConnection connection) {
+        connection.timeout.cancel();
+        connections.decrementAndGet();
+    }
+
+    /**
+     * 时间轮到期回调：空闲或请求接收超过期限则关闭，否则按剩余时间重新调度
+     */
+    private void check(IdleConnection connection) {
+        if (connection.isClosed()) {
+            return;
+        }
+        long timeout = currentTimeoutMillis();
+        long now = System.currentTimeMillis();
+        long delay;
+
+        switch (connection.state) {
+            case IdleConnection.READING:
+                delay = connection.requestStart + timeout
+                        + connection.receivedBytes * 1000 / MIN_RECEIVE_RATE - now;
+                break;
+            case IdleConnection.BUSY:
+                delay = timeout;
+                break;
+            default:
+                delay = connection.lastActive + timeout - now;
+                break;
+        }
+        if (delay <= 0) {
+            expired.incrementAndGet();
+            connection.expire();
+            return;
+        }
+
+        connection.timeout = wheel.schedule(delay, () -> check(connection));
+        // 与close()并发时，确保新调度的任务也被取消
+        if (connection.isClosed()) {
+            connection.timeout.cancel();
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package server.nio;
+
+import common.HttpConstants;
+import common.HttpStatus;
+import server.ServerConfig;
+import server.WorkerPool;
+import server.keepalive.KeepAliveManager;
+import server.request.BadRequestException;
+import server.request.HttpRequest;
+import server.request.PayloadTooLargeException;
+import server.response.FileRegion;
+import server.response.HttpResponse;
+import server.response.ResponseBuilder;
+import server.response.ResponseEncoder;
+import server.router.Router;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NIO事件循环
+ * 每个事件循环独占一个线程和一个Selector，负责一组连接的读写、请求分帧和路由。
+ * 只做内存计算的处理器（固定响应、命中缓存的静态文件等）直接在事件循环线程上运行；
+ * 可能阻塞的处理器（见RouteHandler.mayBlock：静态文件未命中时读取磁盘、等待其他请求读取同一文件、上传写临时文件等）
+ * 在处理器线程池中运行，生成的响应通过任务队列交回事件循环写出；处理期间该连接暂停读取，流水线请求按顺序逐个处理。
+ * 空闲连接只占用读缓冲区和少量状态，不再占用线程栈；空闲超时和请求接收期限由KeepAliveManager的时间轮触发，
+ * 关闭操作通过任务队列回到本线程执行。
+ */
+class EventLoop implements Runnable {
+    private static final byte[] CONTINUE = HttpConstants.CONTINUE_RESPONSE.getBytes(StandardCharsets.US_ASCII);
+
+    private final Router router;
+    private final KeepAliveManager keepAliveManager;
+    private final int maxRequests;
+    private final ServerConfig config;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Queue<Runnable> pendingTasks;
+    private final Thread thread;
+    // 本事件循环上所有连接共用的响应头编码缓冲区
+    private final ResponseEncoder encoder;
+    // 运行处理器的线程池，同时处理的请求数有上限
+    private final WorkerPool handlers;
+    // 运行流式响应体的生产者线程，数量有上限
+    private final WorkerPool producers;
+    // 处理器线程或生产者线程已满时回复的预编码503响应
+    private final byte[] overloadResponse;
+    private volatile boolean running;
+
+    EventLoop(int index, Router router, KeepAliveManager keepAliveManager, ServerConfig config,
+            WorkerPool handlers, WorkerPool producers, byte[] overloadResponse) throws IOException {
+        this.router = router;
+        this.keepAliveManager = keepAliveManager;
+        this.maxRequests = keepAliveManager.getMaxRequests();
+        this.config = config;
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.pendingTasks = new ConcurrentLinkedQueue<>();
+        this.thread = new Thread(this, "nio-event-loop-" + index);
+        this.encoder = new ResponseEncoder();
+        this.handlers = handlers;
+        this.producers = producers;
+        this.overloadResponse = overloadResponse;
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * 将新接受的连接交给本事件循环（线程安全）
+     */
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * 在事件循环线程中执行任务（线程安全）
+     */
+    void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                registerPendingChannels();
+                runPendingTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            onReadable(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    } catch (IOException e) {
+                        // 连接异常（客户端可能主动关闭）
+                        if (connection.channel.isOpen()) {
+                            System.err.println("[" + connection.clientInfo + "] Error: " + e.getMessage());
+                        }
+                        connection.close();
+                    } catch (RuntimeException e) {
+                        // 单个连接上的程序错误只关闭这个连接，不能让事件循环线程退出
+                        System.err.println("[" + connection.clientInfo + "] Unexpected error: " + e);
+                        e.printStackTrace();
+                        connection.close();
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Event loop error: " + e.getMessage());
+                }
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection connection = new NioConnection(channel, key, config);
+                key.attach(connection);
+                connection.idle = keepAliveManager.register(() -> execute(() -> expire(connection)));
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 忽略
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取数据，并处理缓冲区中所有完整的请求
+     */
+    private void onReadable(NioConnection connection) throws IOException {
+        ByteBuffer buffer = connection.decoder.prepareRead(connection.readBuffer);
+        connection.readBuffer = buffer;
+        int read = connection.channel.read(buffer);
+        buffer.flip();
+        if (read == -1) {
+            connection.close();
+            return;
+        }
+        // 请求从第一次读到数据时开始计时，之后读到部分数据不延长期限（每秒只发几个字节的客户端会超时）
+        connection.idle.reading();
+        connection.idle.received(read);
+
+        while (!connection.closeAfterWrite && !connection.handling) {
+            if (!processNextRequest(connection)) {
+                break;
+            }
+        }
+
+        flush(connection);
+    }
+
+    /**
+     * 尝试从读缓冲区中取出一个完整请求并处理
+     * 可能阻塞的请求交给处理器线程，处理器交回响应后由complete()继续处理缓冲区中的后续请求。
+     *
+     * @return true 已处理一个请求，可以继续处理下一个；false 数据不足，或需要等待处理器、响应体
+     */
+    private boolean processNextRequest(NioConnection connection) throws IOException {
+        HttpRequest request;
+        try {
+            request = connection.decoder.decode(connection.readBuffer);
+        } catch (PayloadTooLargeException e) {
+            // 请求体超过上限：不再读取，回复413后关闭连接
+            reject(connection, ResponseBuilder.payloadTooLarge(e.getMaxBodySize()));
+            return false;
+        } catch (BadRequestException e) {
+            // 无法分帧：回复400/501后关闭连接
+            reject(connection, ResponseBuilder.badRequest(e));
+            return false;
+        }
+        if (request == null) {
+            HttpRequest head = connection.decoder.pollContinue();
+            if (head != null) {
+                answerExpectation(connection, head);
+            }
+            return false;
+        }
+
+        connection.requestCount++;
+        logRequest(connection, request);
+
+        connection.idle.busy();
+        boolean keepAlive = request.isKeepAlive() && connection.requestCount < maxRequests;
+
+        if (router.mayBlock(request)) {
+            // 在处理器线程中路由，响应生成前不再读取和处理同一连接上的后续请求
+            connection.handling = true;
+            if (!handlers.submit(() -> handle(connection, request, keepAlive))) {
+                connection.handling = false;
+                overloaded(connection, "handlers busy");
+            }
+            return false;
+        }
+
+        respond(connection, request, route(connection, request), keepAlive);
+        // 流式或文件响应体结束之前不处理后续请求
+        return !connection.closeAfterWrite && connection.stream == null && connection.file == null;
+    }
+
+    /**
+     * 调用处理器；在事件循环线程或处理器线程中执行
+     */
+    private HttpResponse route(NioConnection connection, HttpRequest request) {
+        connection.recycler.beforeHandle();
+        try {
+            return router.route(request);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseBuilder.internalServerError(e.getMessage());
+        } finally {
+            connection.recycler.afterHandle();
+        }
+    }
+
+    /**
+     * 处理器线程：路由请求，再把响应交回事件循环
+     */
+    private void handle(NioConnection connection, HttpRequest request, boolean keepAlive) {
+        HttpResponse response = route(connection, request);
+        execute(() -> complete(connection, request, response, keepAlive));
+    }
+
+    /**
+     * 事件循环线程：写出处理器生成的响应，然后继续处理读缓冲区中的后续请求并恢复读取
+     */
+    private void complete(NioConnection connection, HttpRequest request, HttpResponse response, boolean keepAlive) {
+        connection.handling = false;
+        if (!connection.channel.isOpen()) {
+            // 处理期间连接已关闭
+            connection.recycler.release(request, response);
+            return;
+        }
+        try {
+            respond(connection, request, response, keepAlive);
+            processPipelined(connection);
+            if (connection.handling) {
+                // 缓冲区中的下一个请求也交给了处理器：响应先留在写队列中，与之后的响应合并写出
+                return;
+            }
+            flush(connection);
+        } catch (IOException e) {
+            if (connection.channel.isOpen()) {
+                System.err.println("[" + connection.clientInfo + "] Error: " + e.getMessage());
+            }
+            connection.close();
+        }
+    }
+
+    /**
+     * 把响应加入写队列；流式响应体交给生产者线程
+     */
+    private void respond(NioConnection connection, HttpRequest request, HttpResponse response, boolean keepAlive)
+            throws IOException {
+        if (response.prepareStreaming(request.getHttpVersion())) {
+            // HTTP/1.0客户端不支持chunked，流式响应体以关闭连接结束
+            keepAlive = false;
+        }
+        response.setKeepAlive(keepAlive, keepAliveManager.currentTimeoutSeconds(),
+                maxRequests - connection.requestCount);
+        if (response.isStreaming() && !startStream(connection, request, response)) {
+            // 生产者线程已满：不发送这个响应，回复预编码的503后关闭连接
+            connection.recycler.release(request, response);
+            overloaded(connection, "stream producers busy");
+            return;
+        }
+        // 生产者已启动时，它生成的块只在flush()中取走，总是排在这里写入的响应头之后
+        enqueue(connection, response);
+        logResponse(connection, response);
+
+        if (!keepAlive) {
+            connection.closeAfterWrite = true;
+        }
+        if (response.isStreaming()) {
+            // 响应体结束前不处理同一连接上的后续请求，请求和响应对象在结束后才释放
+            return;
+        }
+        // 文件发送完之前同样不处理后续请求（文件区间已由enqueue()取走，请求/响应对象可以立即释放）
+        connection.recycler.release(request, response);
+    }
+
+    /**
+     * 线程池已满：回复预编码的503后关闭连接
+     */
+    private void overloaded(NioConnection connection, String reason) {
+        connection.writeQueue.add(ByteBuffer.wrap(overloadResponse));
+        System.out.println("[" + connection.clientInfo + "] -> " + HttpStatus.SERVICE_UNAVAILABLE
+                + " (" + reason + ")");
+        connection.closeAfterWrite = true;
+    }
+
+    /**
+     * 回复错误并在写出后关闭连接，读缓冲区中剩余的数据不再处理
+     */
+    private void reject(NioConnection connection, HttpResponse response) throws IOException {
+        response.setKeepAlive(false);
+        enqueue(connection, response);
+        logResponse(connection, response);
+        connection.closeAfterWrite = true;
+    }
+
+    /**
+     * 在生产者线程中开始生成流式响应体，生成的块由flush()在写队列清空后取走
+     *
+     * @return false 生产者线程已满（或服务器正在关闭），没有启动
+     */
+    private boolean startStream(NioConnection connection, HttpRequest request, HttpResponse response) {
+        NioBodyStream stream = new NioBodyStream(this, connection, response);
+        connection.stream = stream;
+        connection.streamRequest = request;
+        connection.streamResponse = response;
+        // 同时运行的生产者达到上限，或服务器正在关闭
+        if (!producers.submit(stream)) {
+            connection.stream = null;
+            connection.streamRequest = null;
+            connection.streamResponse = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 生产者放入新的块后由任务队列调用：写队列已清空（在等待生产者）时继续写出
+     */
+    void resumeStream(NioConnection connection) {
+        if (connection.stream == null || !connection.channel.isOpen() || !connection.writeQueue.isEmpty()) {
+            return;
+        }
+        try {
+            flush(connection);
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 把流式响应体已生成的块移入写队列；响应体结束时释放请求/响应对象，并继续处理读缓冲区中的后续请求
+     *
+     * @return true 写队列中有待写出的数据
+     */
+    private boolean pullStream(NioConnection connection) throws IOException {
+        NioBodyStream stream = connection.stream;
+        if (!stream.drainTo(connection.writeQueue)) {
+            return !connection.writeQueue.isEmpty();
+        }
+        connection.stream = null;
+        if (stream.isFailed()) {
+            // 没有结束块，客户端能发现响应体不完整
+            connection.closeAfterWrite = true;
+        }
+        connection.recycler.release(connection.streamRequest, connection.streamResponse);
+        connection.streamRequest = null;
+        connection.streamResponse = null;
+
+        processPipelined(connection);
+        return !connection.writeQueue.isEmpty();
+    }
+
+    /**
+     * 处理器交回响应、流式或文件响应体写完后，继续处理读缓冲区中已到达的后续请求
+     */
+    private void processPipelined(NioConnection connection) throws IOException {
+        while (!connection.closeAfterWrite && !connection.handling
+                && connection.stream == null && connection.file == null) {
+            if (!processNextRequest(connection)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 客户端发送了 Expect: 100-continue 且请求体尚未到达：只根据请求头检查，
+     * 通过则回复100 Continue继续接收请求体，否则直接作答并在写出后关闭连接
+     */
+    private void answerExpectation(NioConnection connection, HttpRequest head) throws IOException {
+        HttpResponse response;
+        connection.recycler.beforeHandle();
+        try {
+            response = router.precheck(head);
+        } finally {
+            connection.recycler.afterHandle();
+        }
+        if (response == null) {
+            connection.writeQueue.add(ByteBuffer.wrap(CONTINUE));
+            return;
+        }
+
+        connection.requestCount++;
+        logRequest(connection, head);
+        response.setKeepAlive(false);
+        enqueue(connection, response);
+        logResponse(connection, response);
+        connection.closeAfterWrite = true;
+    }
+
+    /**
+     * 把响应加入写队列：响应头复制一份（编码缓冲区随即被下一个响应复用），响应体直接包装，不复制。
+     * 文件响应体先打开文件（失败时什么都没有写出，连接随即关闭），写队列清空后由flush()发送。
+     */
+    private void enqueue(NioConnection connection, HttpResponse response) throws IOException {
+        FileRegion region = response.getFileBody();
+        if (region != null) {
+            connection.file = new NioFileTransfer(region);
+        }
+        connection.writeQueue.add(encoder.encodeHeadCopy(response));
+        byte[] body = response.getBody();
+        if (body != null && body.length > 0) {
+            connection.writeQueue.add(ByteBuffer.wrap(body));
+        }
+        ByteBuffer bufferBody = response.getBufferBody();
+        if (bufferBody != null && bufferBody.hasRemaining()) {
+            connection.writeQueue.add(bufferBody);
+        }
+    }
+
+    /**
+     * 写出待发送的响应；写不完时注册OP_WRITE，写完后恢复读。
+     * 流水线请求产生的多个响应通过一次聚集写(gathering write)发出。
+     * 有流式响应体时，每次写队列清空后再取生产者已生成的块，生产者跟不上时暂停关注任何事件；
+     * 有文件响应体时，写队列清空后以transferTo发送文件，套接字写满时等待OP_WRITE。
+     */
+    private void flush(NioConnection connection) throws IOException {
+        ArrayDeque<ByteBuffer> queue = connection.writeQueue;
+        do {
+            if (!queue.isEmpty()) {
+                if (queue.size() == 1) {
+                    connection.channel.write(queue.peek());
+                } else {
+                    connection.channel.write(queue.toArray(new ByteBuffer[0]));
+                }
+                while (!queue.isEmpty() && !queue.peek().hasRemaining()) {
+                    queue.poll();
+                }
+                if (!queue.isEmpty()) {
+                    connection.idle.busy();
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (connection.file != null) {
+                if (!connection.file.transferTo(connection.channel)) {
+                    connection.idle.busy();
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.file.close();
+                connection.file = null;
+                processPipelined(connection);
+            }
+            // 写队列已清空：取后续请求的响应或流式响应体的下一批块
+        } while (!queue.isEmpty() || connection.file != null
+                || (connection.stream != null && pullStream(connection)));
+
+        if (connection.stream != null || connection.handling) {
+            // 等待生产者生成下一批块（由resumeStream()唤醒），或等待处理器生成响应（由complete()继续）
+            connection.key.interestOps(0);
+            return;
+        }
+        if (connection.decoder.isPartial() || connection.readBuffer.hasRemaining()) {
+            // 已收到下一个请求的部分数据：继续（或从现在开始）计算接收期限
+            connection.idle.reading();
+        } else {
+            connection.idle.idle();
+        }
+
+        if (connection.closeAfterWrite) {
+            connection.close();
+            return;
+        }
+        try {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } catch (CancelledKeyException e) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // 与选择键的处理一样，任务出错不能让事件循环线程退出
+                System.err.println("Event loop task failed: " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 空闲超时：关闭连接
+     */
+    private void expire(NioConnection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        System.out.println("[" + connection.clientInfo + "] Connection timeout after "
+                + connection.requestCount + " requests");
+        connection.close();
+    }
+
+    private void logRequest(NioConnection connection, HttpRequest request) {
+        System.out.println("[" + connection.clientInfo + "] #" + connection.requestCount + " " +
+                request.getMethod() + " " + request.getPath() + " " + request.getHttpVersion());
+    }
+
+    private void logResponse(NioConnection connection, HttpResponse response) {
+        System.out.println("[" + connection.clientInfo + "] -> " + response.getStatus());
+    }
+}
@@ -0,0 +1,142 @@
+package server.nio;
+
+import server.response.ChunkedOutputStream;
+import server.response.FlushPolicy;
+import server.response.HttpResponse;
+import server.response.StreamingBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NIO引擎的流式响应体
+ * 事件循环线程不能阻塞，StreamingBody在生产者线程中运行；分好帧的块经有界队列交给事件循环：
+ * 队列满时生产者阻塞，直到事件循环把已有的块写入套接字（背压），
+ * 因此每个连接在途的数据不超过 2 × QUEUE_CAPACITY 个块，与响应体大小无关。
+ *
+ * 线程约定：run()和OutputStream方法只在生产者线程调用；drainTo()/isFailed()只在事件循环线程调用；
+ * cancel()可在任意线程调用。
+ */
+final class NioBodyStream extends OutputStream implements Runnable {
+    private static final int QUEUE_CAPACITY = 4;
+    // 响应体结束/生成失败的标记
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final ByteBuffer FAILED = ByteBuffer.allocate(0);
+
+    private final EventLoop loop;
+    private final NioConnection connection;
+    private final StreamingBody body;
+    private final int chunkSize;
+    private final FlushPolicy policy;
+    private final boolean chunked;
+    private final ArrayBlockingQueue<ByteBuffer> chunks;
+    // 已安排唤醒事件循环，避免每个块都提交一个任务
+    private final AtomicBoolean wakeupPending;
+    private volatile boolean cancelled;
+    private boolean failed;
+
+    NioBodyStream(EventLoop loop, NioConnection connection, HttpResponse response) {
+        this.loop = loop;
+        this.connection = connection;
+        this.body = response.getStreamingBody();
+        this.chunkSize = response.getChunkSize();
+        this.policy = response.getFlushPolicy();
+        this.chunked = response.isChunked();
+        this.chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.wakeupPending = new AtomicBoolean();
+    }
+
+    /**
+     * 生产者线程：生成响应体，结束后放入结束标记
+     */
+    @Override
+    public void run() {
+        ChunkedOutputStream out = new ChunkedOutputStream(this, chunkSize, policy, chunked);
+        ByteBuffer marker = END;
+        try {
+            body.writeTo(out);
+            out.close();
+        } catch (Exception e) {
+            if (!cancelled) {
+                System.err.println("[" + connection.clientInfo + "] Streaming body failed: " + e);
+            }
+            marker = FAILED;
+        }
+        try {
+            put(marker);
+        } catch (IOException e) {
+            // 连接已关闭
+        }
+    }
+
+    // ChunkedOutputStream每次写入一个完整的块；它的缓冲区会被复用，这里复制一份交给事件循环
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        put(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+    }
+
+    /**
+     * 把队列中已生成的块移入写队列（事件循环线程）
+     *
+     * @return true 响应体已结束（正常结束或生成失败）
+     */
+    boolean drainTo(ArrayDeque<ByteBuffer> writeQueue) {
+        ByteBuffer chunk;
+        while ((chunk = chunks.poll()) != null) {
+            if (chunk == END) {
+                return true;
+            }
+            if (chunk == FAILED) {
+                failed = true;
+                return true;
+            }
+            writeQueue.add(chunk);
+        }
+        return false;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * 连接关闭：让阻塞中的生产者退出
+     */
+    void cancel() {
+        cancelled = true;
+        chunks.clear();
+    }
+
+    private void put(ByteBuffer chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        }
+        if (cancelled) {
+            throw new IOException("Connection closed");
+        }
+        if (wakeupPending.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                wakeupPending.set(false);
+                loop.resumeStream(connection);
+            });
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package server.nio;
+
+import server.ExchangeRecycler;
+import server.ServerConfig;
+import server.keepalive.IdleConnection;
+import server.request.HttpRequest;
+import server.request.RequestDecoder;
+import server.response.HttpResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * NIO连接状态
+ * 保存单个连接的读缓冲区、请求解码器、待写队列和长连接计数，由所属的EventLoop单线程访问
+ * （处理器线程只在处理请求期间使用recycler）
+ */
+class NioConnection {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    final SocketChannel channel;
+    final SelectionKey key;
+    final String clientInfo;
+
+    // 读缓冲区（读模式：position为下一个未处理请求的起点）
+    ByteBuffer readBuffer;
+    final RequestDecoder decoder;
+    final ExchangeRecycler recycler;
+    // 待写出的响应
+    final ArrayDeque<ByteBuffer> writeQueue;
+
+    // 空闲超时跟踪（由KeepAliveManager的时间轮驱动）
+    IdleConnection idle;
+
+    int requestCount;
+    boolean closeAfterWrite;
+    // 处理器正在处理线程池中的请求；期间不读取也不处理后续请求（由处理器线程交回响应时清除）
+    boolean handling;
+
+    // 正在生成的流式响应体，以及结束后才释放的请求/响应对象
+    NioBodyStream stream;
+    HttpRequest streamRequest;
+    HttpResponse streamResponse;
+    // 正在发送的文件响应体
+    NioFileTransfer file;
+
+    NioConnection(SocketChannel channel, SelectionKey key, ServerConfig config) {
+        this.channel = channel;
+        this.key = key;
+        this.clientInfo = describe(channel);
+        this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.readBuffer.flip();
+        this.decoder = new RequestDecoder(config.getMaxBodySize());
+        this.recycler = new ExchangeRecycler(config.getRecycle(), decoder);
+        this.writeQueue = new ArrayDeque<>();
+    }
+
+    void close() {
+        if (idle != null) {
+            idle.close();
+        }
+        if (stream != null) {
+            stream.cancel();
+        }
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+
+    private static String describe(SocketChannel channel) {
+        try {
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            return remote.getAddress().getHostAddress() + ":" + remote.getPort();
+        } catch (IOException | NullPointerException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package server.nio;
+
+import server.response.FileRegion;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * NIO引擎上正在发送的文件响应体
+ * 每次连接可写时由事件循环调用transferTo()，写满套接字发送缓冲区即返回，
+ * 不会让一个大文件独占事件循环；文件内容由内核直接复制，不经过Java堆。
+ * 只在所属事件循环的线程中访问。
+ */
+final class NioFileTransfer {
+    private final FileRegion region;
+    private final FileChannel file;
+    private long position;
+
+    /**
+     * 打开文件；文件已不存在时抛出异常，此时还没有写出响应头
+     */
+    NioFileTransfer(FileRegion region) throws IOException {
+        this.region = region;
+        this.file = region.open();
+        this.position = region.getPosition();
+    }
+
+    /**
+     * 尽量写出剩余部分
+     *
+     * @return true 已写完
+     */
+    boolean transferTo(SocketChannel channel) throws IOException {
+        position = region.transfer(file, position, channel);
+        return position >= region.getEnd();
+    }
+
+    void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+}
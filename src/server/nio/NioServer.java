@@ -0,0 +1,117 @@
+package server.nio;
+
+import server.ServerConfig;
+import server.VirtualThreads;
+import server.WorkerPool;
+import server.keepalive.KeepAliveManager;
+import server.router.Router;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非阻塞NIO服务器引擎
+ * 由Acceptor接受的连接通过register()轮询分配给固定数量的EventLoop。
+ * 与ClientHandler使用相同的Router/RouteHandler契约。
+ */
+public class NioServer {
+    private final ServerConfig config;
+    private final Router router;
+    private final KeepAliveManager keepAliveManager;
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger next;
+    // 生产者线程已满时回复的预编码503响应
+    private final byte[] overloadResponse;
+    // 运行处理器的线程：处理器可能阻塞（读取文件等），不能在事件循环线程上运行；
+    // 同时处理的请求不超过--max-workers，另有--worker-queue个排队位置
+    private WorkerPool handlers;
+    // 流式响应体的生产者线程：支持时每个响应体一个虚拟线程，否则为按需创建的守护线程；
+    // 同时运行的生产者不超过--max-workers，客户端不读取时生产者一直占用线程，不能无限增长
+    private WorkerPool producers;
+
+    /**
+     * @param overloadResponse 流式响应体的生产者线程已满时回复的预编码503响应（带 Connection: close）
+     */
+    public NioServer(ServerConfig config, Router router, KeepAliveManager keepAliveManager,
+            byte[] overloadResponse) {
+        this.config = config;
+        this.router = router;
+        this.keepAliveManager = keepAliveManager;
+        this.overloadResponse = overloadResponse;
+        this.eventLoops = new EventLoop[config.getIoThreads()];
+        this.next = new AtomicInteger();
+    }
+
+    /**
+     * 启动所有事件循环
+     */
+    public void start() throws IOException {
+        handlers = VirtualThreads.isSupported()
+                ? WorkerPool.virtual(VirtualThreads.newPerTaskExecutor(), config.getMaxWorkers())
+                : newPool("nio-handler-", config.getMaxWorkers(), config.getWorkerQueue());
+        producers = VirtualThreads.isSupported()
+                ? WorkerPool.virtual(VirtualThreads.newPerTaskExecutor(), config.getMaxWorkers())
+                : newPool("nio-stream-producer-", config.getMaxWorkers(), 0);
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(i, router, keepAliveManager, config, handlers, producers,
+                    overloadResponse);
+            eventLoops[i].start();
+        }
+    }
+
+    /**
+     * 将新连接交给下一个事件循环（可由多个Acceptor线程并发调用）
+     */
+    public void register(SocketChannel channel) {
+        int index = Math.floorMod(next.getAndIncrement(), eventLoops.length);
+        eventLoops[index].register(channel);
+    }
+
+    /**
+     * 关闭所有事件循环
+     */
+    public void stop() {
+        for (EventLoop loop : eventLoops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        if (handlers != null) {
+            handlers.shutdownNow();
+        }
+        if (producers != null) {
+            producers.shutdownNow();
+        }
+    }
+
+    /**
+     * 平台线程池（守护线程）：线程和排队位置都占满时直接拒绝；生产者池不排队
+     */
+    private static WorkerPool newPool(String namePrefix, int maxThreads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        return WorkerPool.platform(maxThreads, queueCapacity, task -> {
+            Thread thread = new Thread(task, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 处理器线程池（统计用），启动前为null
+     */
+    public WorkerPool getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * 流式响应体的生产者线程池（统计用），启动前为null
+     */
+    public WorkerPool getProducers() {
+        return producers;
+    }
+
+    public int getEventLoopCount() {
+        return eventLoops.length;
+    }
+}
@@ -0,0 +1,31 @@
+package server.request;
+
+import common.HttpStatus;
+
+import java.io.IOException;
+
+/**
+ * 请求无法按协议分帧：Content-Length重复或格式错误、chunk大小格式错误、不支持的Transfer-Encoding等
+ * 读取位置已无法对齐到下一个请求，回复错误后必须关闭连接。
+ */
+public class BadRequestException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final HttpStatus status;
+
+    public BadRequestException(String message) {
+        this(HttpStatus.BAD_REQUEST, message);
+    }
+
+    /**
+     * @param status 回复的状态码：400，或不支持的传输编码为501
+     */
+    public BadRequestException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
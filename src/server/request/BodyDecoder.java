@@ -0,0 +1,250 @@
+package server.request;
+
+import common.ByteScanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 请求体解码器
+ * 从连接的读缓冲区中按 Content-Length 或 Transfer-Encoding: chunked 取出请求体字节，
+ * 每次只消费缓冲区中已有的数据，可随新数据到达反复调用；累计长度超过上限时抛出PayloadTooLargeException，
+ * chunk格式错误时抛出BadRequestException。出错后解码器停在错误状态，之后的调用抛出同一个异常。
+ */
+final class BodyDecoder {
+    // chunk大小行和trailer行的最大长度
+    private static final int MAX_LINE = 1024;
+
+    private static final int CHUNK_SIZE = 0;
+    private static final int CHUNK_DATA = 1;
+    private static final int CHUNK_DATA_END = 2;
+    private static final int TRAILER = 3;
+    private static final int DONE = 4;
+    private static final int FAILED = 5;
+
+    private static final ByteScanner SCANNER = ByteScanner.get();
+
+    private final boolean chunked;
+    private final long maxBodySize;
+    // 当前块（定长模式下为整个请求体）剩余的字节数
+    private long remaining;
+    private long total;
+    private int state;
+    // 解码失败的原因，state为FAILED时非null
+    private IOException error;
+
+    private BodyDecoder(boolean chunked, long length, long maxBodySize) {
+        this.chunked = chunked;
+        this.remaining = length;
+        this.maxBodySize = maxBodySize;
+        this.state = chunked ? CHUNK_SIZE : (length == 0 ? DONE : CHUNK_DATA);
+    }
+
+    static BodyDecoder fixedLength(long length, long maxBodySize) {
+        return new BodyDecoder(false, length, maxBodySize);
+    }
+
+    static BodyDecoder chunked(long maxBodySize) {
+        return new BodyDecoder(true, 0, maxBodySize);
+    }
+
+    /**
+     * 从src中解码请求体到dst
+     *
+     * @param src 读模式的连接缓冲区，已消费的字节会被跳过
+     * @return 写入dst的字节数；0表示需要更多输入；-1表示请求体已结束
+     */
+    int read(ByteBuffer src, byte[] dst, int off, int len) throws IOException {
+        if (state == FAILED) {
+            throw error;
+        }
+        try {
+            return decode(src, dst, off, len);
+        } catch (IOException e) {
+            state = FAILED;
+            error = e;
+            throw e;
+        }
+    }
+
+    private int decode(ByteBuffer src, byte[] dst, int off, int len) throws IOException {
+        while (true) {
+            switch (state) {
+                case DONE:
+                    return -1;
+                case CHUNK_DATA: {
+                    int n = (int) Math.min(Math.min(len, src.remaining()), remaining);
+                    if (n == 0) {
+                        return 0;
+                    }
+                    src.get(dst, off, n);
+                    remaining -= n;
+                    if (remaining == 0) {
+                        state = chunked ? CHUNK_DATA_END : DONE;
+                    }
+                    return n;
+                }
+                case CHUNK_SIZE: {
+                    String line = readLine(src);
+                    if (line == null) {
+                        return 0;
+                    }
+                    remaining = parseChunkSize(line);
+                    if (remaining == 0) {
+                        state = TRAILER;
+                    } else {
+                        addToTotal(remaining);
+                        state = CHUNK_DATA;
+                    }
+                    break;
+                }
+                case CHUNK_DATA_END: {
+                    String line = readLine(src);
+                    if (line == null) {
+                        return 0;
+                    }
+                    if (!line.isEmpty()) {
+                        throw new BadRequestException("Missing CRLF after chunk data");
+                    }
+                    state = CHUNK_SIZE;
+                    break;
+                }
+                case TRAILER: {
+                    // trailer头部忽略，读到空行结束
+                    String line = readLine(src);
+                    if (line == null) {
+                        return 0;
+                    }
+                    if (line.isEmpty()) {
+                        state = DONE;
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown state: " + state);
+            }
+        }
+    }
+
+    /**
+     * 跳过请求体剩余部分（处理器没有读完时，为下一个请求对齐报文边界）
+     *
+     * @return true 已跳到结尾；false 需要更多输入
+     */
+    boolean skip(ByteBuffer src) throws IOException {
+        byte[] scratch = null;
+        while (true) {
+            if (state == CHUNK_DATA) {
+                int n = (int) Math.min(src.remaining(), remaining);
+                if (n == 0) {
+                    return false;
+                }
+                src.position(src.position() + n);
+                remaining -= n;
+                if (remaining == 0) {
+                    state = chunked ? CHUNK_DATA_END : DONE;
+                }
+                continue;
+            }
+            if (scratch == null) {
+                scratch = new byte[1];
+            }
+            int n = read(src, scratch, 0, 1);
+            if (n == -1) {
+                return true;
+            }
+            if (n == 0) {
+                return false;
+            }
+        }
+    }
+
+    boolean isFinished() {
+        return state == DONE;
+    }
+
+    /**
+     * 解码失败的原因，没有失败时为null
+     */
+    IOException getError() {
+        return error;
+    }
+
+    private void addToTotal(long length) throws PayloadTooLargeException {
+        total += length;
+        if (total > maxBodySize) {
+            throw new PayloadTooLargeException(maxBodySize);
+        }
+    }
+
+    /**
+     * 解析chunk大小：只接受十六进制数字（不接受正负号和0x前缀），溢出时报错
+     */
+    private static long parseChunkSize(String line) throws BadRequestException {
+        // 忽略chunk扩展: size;name=value
+        int semicolon = line.indexOf(';');
+        String hex = (semicolon == -1 ? line : line.substring(0, semicolon)).trim();
+        if (hex.isEmpty()) {
+            throw new BadRequestException("Invalid chunk size: " + line);
+        }
+        long size = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = hexDigit(hex.charAt(i));
+            if (digit < 0 || size > (Long.MAX_VALUE >>> 4)) {
+                throw new BadRequestException("Invalid chunk size: " + line);
+            }
+            size = (size << 4) | digit;
+        }
+        return size;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * 读取一行（不含CRLF）；缓冲区中还没有完整的一行时返回null且不消费
+     */
+    private static String readLine(ByteBuffer src) throws IOException {
+        int start = src.position();
+        int limit = src.limit();
+        // 最多扫描MAX_LINE+1个字节
+        int scanEnd = (int) Math.min(limit, (long) start + MAX_LINE + 1);
+        int i = indexOfLf(src, start, scanEnd);
+        if (i != -1) {
+            int end = i > start && src.get(i - 1) == '\r' ? i - 1 : i;
+            byte[] bytes = new byte[end - start];
+            src.get(bytes);
+            src.position(i + 1);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+        if (limit - start >= MAX_LINE) {
+            throw new BadRequestException("Chunk header line too long");
+        }
+        return null;
+    }
+
+    private static int indexOfLf(ByteBuffer src, int from, int to) {
+        if (src.hasArray()) {
+            int offset = src.arrayOffset();
+            int found = SCANNER.indexOf(src.array(), offset + from, offset + to, (byte) '\n');
+            return found == -1 ? -1 : found - offset;
+        }
+        for (int i = from; i < to; i++) {
+            if (src.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
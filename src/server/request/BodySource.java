@@ -0,0 +1,27 @@
+package server.request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 流式请求体的数据来源：连接的读缓冲区，以及从Socket继续读入的方法
+ */
+interface BodySource {
+
+    /**
+     * 当前读缓冲区（读模式）；fill()之后可能换成新分配的缓冲区
+     */
+    ByteBuffer buffer();
+
+    /**
+     * 阻塞读入更多数据
+     *
+     * @return false 连接已关闭
+     */
+    boolean fill() throws IOException;
+
+    /**
+     * 发送 100 Continue 临时响应（客户端发送了 Expect: 100-continue，处理器开始读取请求体时）
+     */
+    void sendContinue() throws IOException;
+}
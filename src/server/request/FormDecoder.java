@@ -0,0 +1,127 @@
+package server.request;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * application/x-www-form-urlencoded 解码（查询字符串格式相同）
+ * 表单直接在请求体字节上逐段解码，不经过整体String和split；
+ * 不含%和+的片段直接创建String，跳过解码。格式错误的%序列按原样保留。
+ */
+final class FormDecoder {
+
+    private FormDecoder() {
+    }
+
+    /**
+     * 解码请求体中的表单数据
+     */
+    static void decodeForm(byte[] data, int start, int end, Map<String, String> target) {
+        int pairStart = start;
+        while (pairStart < end) {
+            int pairEnd = indexOf(data, pairStart, end, (byte) '&');
+            if (pairEnd > pairStart) {
+                int eq = indexOf(data, pairStart, pairEnd, (byte) '=');
+                if (eq < pairEnd) {
+                    target.put(decode(data, pairStart, eq), decode(data, eq + 1, pairEnd));
+                } else {
+                    target.put(decode(data, pairStart, pairEnd), "");
+                }
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    /**
+     * 解码查询字符串
+     */
+    static void decodeQuery(String query, Map<String, String> target) {
+        int pairStart = 0;
+        int length = query.length();
+        while (pairStart < length) {
+            int pairEnd = query.indexOf('&', pairStart);
+            if (pairEnd == -1) {
+                pairEnd = length;
+            }
+            if (pairEnd > pairStart) {
+                int eq = query.indexOf('=', pairStart);
+                if (eq != -1 && eq < pairEnd) {
+                    target.put(decode(query.substring(pairStart, eq)), decode(query.substring(eq + 1, pairEnd)));
+                } else {
+                    target.put(decode(query.substring(pairStart, pairEnd)), "");
+                }
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    /**
+     * URL解码字符串；不含%和+时直接返回原字符串
+     */
+    static String decode(String value) {
+        if (value.indexOf('%') == -1 && value.indexOf('+') == -1) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            // 忽略解码错误
+            return value;
+        }
+    }
+
+    /**
+     * URL解码字节区间（UTF-8）
+     */
+    static String decode(byte[] data, int start, int end) {
+        int i = start;
+        while (i < end && data[i] != '%' && data[i] != '+') {
+            i++;
+        }
+        if (i == end) {
+            return new String(data, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] out = new byte[end - start];
+        int length = i - start;
+        System.arraycopy(data, start, out, 0, length);
+        while (i < end) {
+            byte b = data[i];
+            if (b == '+') {
+                out[length++] = ' ';
+                i++;
+            } else if (b == '%' && i + 2 < end && hex(data[i + 1]) >= 0 && hex(data[i + 2]) >= 0) {
+                out[length++] = (byte) ((hex(data[i + 1]) << 4) | hex(data[i + 2]));
+                i += 3;
+            } else {
+                out[length++] = b;
+                i++;
+            }
+        }
+        return new String(out, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int hex(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
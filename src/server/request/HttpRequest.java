@@ -1,10 +1,17 @@
 package server.request;
 
+import common.HeaderTable;
+import common.HttpConstants;
+import common.HttpHeaders;
 import common.HttpMethod;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -16,20 +23,67 @@ public class HttpRequest {
     private String uri;
     private String path;
     private String queryString;
+    // 查询参数和表单数据在第一次访问时才解析，之后缓存
     private Map<String, String> queryParams;
     private String httpVersion;
-    private Map<String, String> headers;
+    private final HeaderTable headers;
     private byte[] body;
+    // 流式请求体（大请求体或chunked），处理器按需读取；为null时请求体已在body中
+    private InputStream bodyStream;
     private Map<String, String> formData;
 
+    // 请求头原始字节，随对象复用
+    private byte[] headBuffer;
+    // 对象复用的调试模式下，释放后再访问会抛出异常
+    private boolean released;
+
     public HttpRequest() {
-        this.headers = new HashMap<>();
-        this.queryParams = new HashMap<>();
-        this.formData = new HashMap<>();
+        this.headers = new HeaderTable();
+    }
+
+    /**
+     * 清空所有字段以便在同一连接的下一个请求中复用（保留头部表和请求头缓冲区）
+     */
+    void reset() {
+        method = null;
+        uri = null;
+        path = null;
+        queryString = null;
+        queryParams = null;
+        httpVersion = null;
+        headers.clear();
+        body = null;
+        bodyStream = null;
+        formData = null;
+    }
+
+    /**
+     * 获取至少能容纳length字节的请求头缓冲区
+     */
+    byte[] headBuffer(int length) {
+        if (headBuffer == null || headBuffer.length < length) {
+            headBuffer = new byte[Math.max(length, 512)];
+        }
+        return headBuffer;
+    }
+
+    /**
+     * 标记为已释放（对象复用的调试模式）：之后处理器再访问会抛出异常
+     */
+    public void release() {
+        this.released = true;
+    }
+
+    private void ensureLive() {
+        if (released) {
+            throw new IllegalStateException("HttpRequest " + method + " " + uri
+                    + " used after it was released; a handler kept a reference past its return");
+        }
     }
 
     // Getters and Setters
     public HttpMethod getMethod() {
+        ensureLive();
         return method;
     }
 
@@ -38,6 +92,7 @@ public class HttpRequest {
     }
 
     public String getUri() {
+        ensureLive();
         return uri;
     }
 
@@ -47,22 +102,32 @@ public class HttpRequest {
     }
 
     public String getPath() {
+        ensureLive();
         return path;
     }
 
     public String getQueryString() {
+        ensureLive();
         return queryString;
     }
 
     public Map<String, String> getQueryParams() {
+        ensureLive();
+        if (queryParams == null) {
+            queryParams = new HashMap<>();
+            if (queryString != null && !queryString.isEmpty()) {
+                FormDecoder.decodeQuery(queryString, queryParams);
+            }
+        }
         return queryParams;
     }
 
     public String getQueryParam(String name) {
-        return queryParams.get(name);
+        return getQueryParams().get(name);
     }
 
     public String getHttpVersion() {
+        ensureLive();
         return httpVersion;
     }
 
@@ -70,34 +135,88 @@ public class HttpRequest {
         this.httpVersion = httpVersion;
     }
 
+    /**
+     * 获取所有请求头的Map快照（同名取最后一个值）
+     */
     public Map<String, String> getHeaders() {
+        ensureLive();
+        return headers.toMap();
+    }
+
+    /**
+     * 获取请求头表（不区分大小写，支持同名多值）
+     */
+    public HeaderTable getHeaderTable() {
+        ensureLive();
         return headers;
     }
 
     public String getHeader(String name) {
+        ensureLive();
         // HTTP头部不区分大小写
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(name)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        return headers.get(name);
+    }
+
+    public List<String> getHeaderValues(String name) {
+        ensureLive();
+        return headers.getAll(name);
     }
 
     public void setHeader(String name, String value) {
-        this.headers.put(name, value);
+        headers.set(name, value);
     }
 
+    /**
+     * 获取完整请求体；流式请求体在第一次调用时读完并缓存（受最大长度限制）
+     *
+     * @throws UncheckedIOException 读取请求体失败，或超过最大长度（cause为PayloadTooLargeException）
+     */
     public byte[] getBody() {
+        ensureLive();
+        if (bodyStream != null) {
+            try {
+                body = bodyStream.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bodyStream = null;
+        }
         return body;
     }
 
     public void setBody(byte[] body) {
         this.body = body;
-        parseFormData();
+        this.bodyStream = null;
+        this.formData = null;
+    }
+
+    /**
+     * 以流的形式读取请求体，大请求体不必整体放入内存；没有请求体时返回空流
+     */
+    public InputStream getBodyStream() {
+        ensureLive();
+        if (bodyStream != null) {
+            return bodyStream;
+        }
+        return new ByteArrayInputStream(body != null ? body : new byte[0]);
+    }
+
+    /**
+     * 请求体是否以流的形式等待处理器读取
+     */
+    public boolean isBodyStreaming() {
+        ensureLive();
+        return bodyStream != null;
+    }
+
+    void setBodyStream(InputStream bodyStream) {
+        this.body = null;
+        this.bodyStream = bodyStream;
+        this.formData = null;
     }
 
     public String getBodyAsString() {
+        byte[] body = getBody();
         if (body == null) {
             return null;
         }
@@ -109,15 +228,37 @@ public class HttpRequest {
     }
 
     public Map<String, String> getFormData() {
+        ensureLive();
+        if (formData == null) {
+            formData = new HashMap<>();
+            String contentType = getContentType();
+            if (contentType != null && contentType.contains("application/x-www-form-urlencoded")) {
+                byte[] body = getBody();
+                if (body != null) {
+                    FormDecoder.decodeForm(body, 0, body.length, formData);
+                }
+            }
+        }
         return formData;
     }
 
     public String getFormParam(String name) {
-        return formData.get(name);
+        return getFormData().get(name);
+    }
+
+    /**
+     * multipart/form-data 请求体的流式解析器，部分超过默认内存阈值时写入临时文件；其他类型返回null
+     */
+    public MultipartParser getMultipartParser() {
+        String boundary = MultipartParser.boundaryOf(getContentType());
+        if (boundary == null) {
+            return null;
+        }
+        return new MultipartParser(getBodyStream(), boundary, MultipartParser.DEFAULT_MEMORY_THRESHOLD, null);
     }
 
     public int getContentLength() {
-        String contentLength = getHeader("Content-Length");
+        String contentLength = getHeader(HttpHeaders.CONTENT_LENGTH);
         if (contentLength != null) {
             try {
                 return Integer.parseInt(contentLength.trim());
@@ -129,11 +270,11 @@ public class HttpRequest {
     }
 
     public String getContentType() {
-        return getHeader("Content-Type");
+        return getHeader(HttpHeaders.CONTENT_TYPE);
     }
 
     public boolean isKeepAlive() {
-        String connection = getHeader("Connection");
+        String connection = getHeader(HttpHeaders.CONNECTION);
         if (connection != null) {
             return connection.equalsIgnoreCase("keep-alive");
         }
@@ -141,10 +282,20 @@ public class HttpRequest {
         return "HTTP/1.1".equals(httpVersion);
     }
 
+    /**
+     * 客户端是否在等待 100 Continue 后才发送请求体（Expect: 100-continue，仅HTTP/1.1）
+     */
+    public boolean expectsContinue() {
+        String expect = getHeader(HttpHeaders.EXPECT);
+        return expect != null && expect.equalsIgnoreCase(HttpHeaders.CONTINUE_VALUE)
+                && HttpConstants.HTTP_1_1.equals(httpVersion);
+    }
+
     /**
      * 解析URI，分离路径和查询字符串
      */
     private void parseUri(String uri) {
+        this.queryParams = null;
         if (uri == null) {
             this.path = "/";
             this.queryString = "";
@@ -155,79 +306,20 @@ public class HttpRequest {
         if (queryIndex != -1) {
             this.path = uri.substring(0, queryIndex);
             this.queryString = uri.substring(queryIndex + 1);
-            parseQueryString(this.queryString);
         } else {
             this.path = uri;
             this.queryString = "";
         }
 
         // URL解码路径
-        try {
-            this.path = URLDecoder.decode(this.path, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // 忽略解码错误
-        }
-    }
-
-    /**
-     * 解析查询字符串
-     */
-    private void parseQueryString(String queryString) {
-        if (queryString == null || queryString.isEmpty()) {
-            return;
-        }
-
-        String[] pairs = queryString.split("&");
-        for (String pair : pairs) {
-            int idx = pair.indexOf('=');
-            try {
-                if (idx != -1) {
-                    String key = URLDecoder.decode(pair.substring(0, idx), "UTF-8");
-                    String value = URLDecoder.decode(pair.substring(idx + 1), "UTF-8");
-                    queryParams.put(key, value);
-                } else {
-                    String key = URLDecoder.decode(pair, "UTF-8");
-                    queryParams.put(key, "");
-                }
-            } catch (UnsupportedEncodingException e) {
-                // 忽略解码错误
-            }
-        }
-    }
-
-    /**
-     * 解析表单数据
-     */
-    private void parseFormData() {
-        String contentType = getContentType();
-        if (contentType != null && contentType.contains("application/x-www-form-urlencoded")) {
-            String bodyStr = getBodyAsString();
-            if (bodyStr != null && !bodyStr.isEmpty()) {
-                String[] pairs = bodyStr.split("&");
-                for (String pair : pairs) {
-                    int idx = pair.indexOf('=');
-                    try {
-                        if (idx != -1) {
-                            String key = URLDecoder.decode(pair.substring(0, idx), "UTF-8");
-                            String value = URLDecoder.decode(pair.substring(idx + 1), "UTF-8");
-                            formData.put(key, value);
-                        } else {
-                            String key = URLDecoder.decode(pair, "UTF-8");
-                            formData.put(key, "");
-                        }
-                    } catch (UnsupportedEncodingException e) {
-                        // 忽略解码错误
-                    }
-                }
-            }
-        }
+        this.path = FormDecoder.decode(this.path);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(method).append(" ").append(uri).append(" ").append(httpVersion).append("\n");
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
+        for (Map.Entry<String, String> entry : getHeaders().entrySet()) {
             sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
         }
         if (body != null && body.length > 0) {
@@ -0,0 +1,373 @@
+package server.request;
+
+import common.ByteScanner;
+import common.HeaderTable;
+import common.HttpHeaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流式 multipart/form-data 解析器
+ * 从请求体流中逐个读出部分：只在固定大小的缓冲区中查找分隔符，不需要先把整个请求体读入内存。
+ * 不超过内存阈值的部分保存在内存中，超过后通过FileChannel写入临时文件，
+ * 因此无论上传文件多大，每个上传占用的内存都不超过 缓冲区 + 阈值。
+ *
+ * 用法：
+ * <pre>
+ * try (MultipartParser parser = request.getMultipartParser()) {
+ *     Part part;
+ *     while ((part = parser.next()) != null) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * close()删除本次解析产生的临时文件，需要保留的部分先调用Part.moveTo()。
+ */
+public class MultipartParser implements Closeable {
+    // 默认内存阈值，超过后写入临时文件
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // 单个部分的头部总长度上限
+    private static final int MAX_PART_HEADER_SIZE = 16 * 1024;
+    private static final int MAX_BOUNDARY_LENGTH = 70;
+    private static final ByteScanner SCANNER = ByteScanner.get();
+
+    private final InputStream in;
+    // 分隔符: \r\n--boundary
+    private final byte[] delimiter;
+    private final int memoryThreshold;
+    private final Path tempDir;
+    private final List<Path> tempFiles;
+
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * @param in              请求体
+     * @param boundary        Content-Type中的boundary参数
+     * @param memoryThreshold 部分内容超过该字节数时写入临时文件
+     * @param tempDir         临时文件目录，为null时使用系统临时目录
+     */
+    public MultipartParser(InputStream in, String boundary, int memoryThreshold, Path tempDir) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH) {
+            throw new IllegalArgumentException("Invalid multipart boundary: " + boundary);
+        }
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.memoryThreshold = memoryThreshold;
+        this.tempDir = tempDir;
+        this.tempFiles = new ArrayList<>();
+        this.buffer = new byte[BUFFER_SIZE];
+        // 第一个分隔符前面没有CRLF，预置一个使所有分隔符按同一规则匹配
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * 从Content-Type中取出boundary；不是multipart/form-data时返回null
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.regionMatches(true, 0, "multipart/form-data", 0, 19)) {
+            return null;
+        }
+        return parameter(contentType, "boundary");
+    }
+
+    /**
+     * 读取下一个部分；内容已完整读出（在内存或临时文件中）
+     *
+     * @return 部分；没有更多部分时返回null
+     * @throws IOException 格式错误、连接中断或请求体超过最大长度
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            // 跳过第一个分隔符之前的内容
+            readUntilDelimiter(null);
+            started = true;
+        }
+        if (!startPart()) {
+            finished = true;
+            return null;
+        }
+
+        HeaderTable headers = readPartHeaders();
+        String disposition = headers.get(HttpHeaders.CONTENT_DISPOSITION);
+        if (disposition == null) {
+            throw new IOException("Multipart part without Content-Disposition");
+        }
+
+        PartSink sink = new PartSink();
+        try {
+            readUntilDelimiter(sink);
+        } finally {
+            sink.close();
+        }
+        return new Part(headers, parameter(disposition, "name"), parameter(disposition, "filename"),
+                sink.memoryBytes(), sink.file, sink.size);
+    }
+
+    /**
+     * 删除本次解析产生的临时文件（已经moveTo()的除外）
+     */
+    @Override
+    public void close() {
+        for (Path file : tempFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // 忽略删除失败
+            }
+        }
+        tempFiles.clear();
+    }
+
+    /**
+     * 分隔符之后：--表示结束，否则跳过可选的空白和CRLF
+     *
+     * @return true 后面还有一个部分
+     */
+    private boolean startPart() throws IOException {
+        while (limit - pos < 2) {
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart body");
+            }
+        }
+        if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+            pos += 2;
+            return false;
+        }
+        if (!readLine(MAX_PART_HEADER_SIZE).trim().isEmpty()) {
+            throw new IOException("Invalid multipart boundary line");
+        }
+        return true;
+    }
+
+    private HeaderTable readPartHeaders() throws IOException {
+        HeaderTable headers = new HeaderTable();
+        int budget = MAX_PART_HEADER_SIZE;
+        while (true) {
+            String line = readLine(budget);
+            if (line.isEmpty()) {
+                return headers;
+            }
+            budget -= line.length() + 2;
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+    }
+
+    /**
+     * 把内容写入sink直到遇到分隔符，position停在分隔符之后；sink为null时丢弃
+     * 缓冲区末尾可能是分隔符前缀的字节先保留，读入更多数据后再判断
+     */
+    private void readUntilDelimiter(PartSink sink) throws IOException {
+        while (true) {
+            int found = indexOfDelimiter();
+            if (found != -1) {
+                write(sink, pos, found - pos);
+                pos = found + delimiter.length;
+                return;
+            }
+            int safe = Math.max(pos, limit - delimiter.length + 1);
+            write(sink, pos, safe - pos);
+            pos = safe;
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart body");
+            }
+        }
+    }
+
+    private void write(PartSink sink, int offset, int length) throws IOException {
+        if (sink != null && length > 0) {
+            sink.write(buffer, offset, length);
+        }
+    }
+
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        int i = pos;
+        while (i <= last) {
+            // 先批量定位候选的'\r'，再逐字节比较分隔符其余部分
+            i = SCANNER.indexOf(buffer, i, last + 1, (byte) '\r');
+            if (i == -1) {
+                return -1;
+            }
+            int j = 1;
+            while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                j++;
+            }
+            if (j == delimiter.length) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * 读取一行（不含CRLF），部分头部按UTF-8解码（浏览器直接用UTF-8发送文件名）
+     */
+    private String readLine(int maxLength) throws IOException {
+        // 已扫描过的长度（相对pos），fill()移动数据后仍然有效
+        int scanned = 0;
+        while (true) {
+            int i = SCANNER.indexOf(buffer, pos + scanned, limit, (byte) '\n');
+            if (i != -1 && i - pos <= maxLength) {
+                int end = i > pos && buffer[i - 1] == '\r' ? i - 1 : i;
+                String line = new String(buffer, pos, end - pos, StandardCharsets.UTF_8);
+                pos = i + 1;
+                return line;
+            }
+            scanned = limit - pos;
+            if (scanned >= maxLength || scanned >= buffer.length) {
+                throw new IOException("Multipart header too long");
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart body");
+            }
+        }
+    }
+
+    /**
+     * 丢弃已消费的字节并读入更多数据
+     *
+     * @return false 输入已结束
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * 取出头部参数值，如 form-data; name="file"; filename="a.txt"
+     */
+    static String parameter(String header, String name) {
+        int i = header.indexOf(';');
+        while (i != -1 && i < header.length()) {
+            int start = i + 1;
+            while (start < header.length() && header.charAt(start) == ' ') {
+                start++;
+            }
+            int eq = header.indexOf('=', start);
+            if (eq == -1) {
+                return null;
+            }
+            boolean match = header.substring(start, eq).trim().equalsIgnoreCase(name);
+
+            StringBuilder value = new StringBuilder();
+            int end = eq + 1;
+            if (end < header.length() && header.charAt(end) == '"') {
+                end++;
+                while (end < header.length() && header.charAt(end) != '"') {
+                    char c = header.charAt(end);
+                    if (c == '\\' && end + 1 < header.length()) {
+                        c = header.charAt(++end);
+                    }
+                    value.append(c);
+                    end++;
+                }
+                end = header.indexOf(';', end);
+            } else {
+                int semicolon = header.indexOf(';', end);
+                value.append(header, end, semicolon == -1 ? header.length() : semicolon);
+                end = semicolon;
+            }
+            if (match) {
+                return value.toString().trim();
+            }
+            i = end;
+        }
+        return null;
+    }
+
+    /**
+     * 部分内容的去处：先写内存，超过阈值后转入临时文件
+     */
+    private final class PartSink {
+        private byte[] memory;
+        private int memoryLength;
+        private FileChannel channel;
+        private Path file;
+        private long size;
+
+        void write(byte[] data, int offset, int length) throws IOException {
+            size += length;
+            if (channel == null && memoryLength + length <= memoryThreshold) {
+                if (memory == null || memoryLength + length > memory.length) {
+                    int capacity = Math.max(memoryLength + length, memory == null ? 1024 : memory.length * 2);
+                    memory = Arrays.copyOf(memory == null ? new byte[0] : memory, Math.min(capacity, memoryThreshold));
+                }
+                System.arraycopy(data, offset, memory, memoryLength, length);
+                memoryLength += length;
+                return;
+            }
+            if (channel == null) {
+                file = tempDir != null ? Files.createTempFile(tempDir, "upload-", ".part")
+                        : Files.createTempFile("upload-", ".part");
+                tempFiles.add(file);
+                channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                writeFully(memory, 0, memoryLength);
+                memory = null;
+                memoryLength = 0;
+            }
+            writeFully(data, offset, length);
+        }
+
+        byte[] memoryBytes() {
+            if (channel != null || file != null) {
+                return null;
+            }
+            if (memory == null) {
+                return new byte[0];
+            }
+            return memoryLength == memory.length ? memory : Arrays.copyOf(memory, memoryLength);
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        private void writeFully(byte[] data, int offset, int length) throws IOException {
+            if (data == null || length == 0) {
+                return;
+            }
+            ByteBuffer src = ByteBuffer.wrap(data, offset, length);
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package server.request;
+
+import common.HeaderTable;
+import common.HttpHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * multipart/form-data 中的一个部分
+ * 内容不超过内存阈值时保存在字节数组中，否则已经写入临时文件（见MultipartParser）。
+ * 临时文件在MultipartParser.close()时删除；需要保留时调用moveTo()。
+ */
+public class Part {
+    private final HeaderTable headers;
+    private final String name;
+    private final String fileName;
+    private final byte[] data;
+    // 临时文件；moveTo()之后为目标路径
+    private Path file;
+    private final long size;
+
+    Part(HeaderTable headers, String name, String fileName, byte[] data, Path file, long size) {
+        this.headers = headers;
+        this.name = name;
+        this.fileName = fileName;
+        this.data = data;
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * 表单字段名（Content-Disposition的name参数）
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 上传文件名；普通字段返回null
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return headers.get(HttpHeaders.CONTENT_TYPE);
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 内容是否在内存中（否则在临时文件中）
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * 临时文件路径；内容在内存中时返回null
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 获取全部内容；内容在临时文件中时会整体读入内存，大文件应使用getInputStream()
+     */
+    public byte[] getBytes() throws IOException {
+        return file == null ? data : Files.readAllBytes(file);
+    }
+
+    public String getString() throws IOException {
+        return new String(getBytes(), StandardCharsets.UTF_8);
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return file == null ? new ByteArrayInputStream(data) : Files.newInputStream(file);
+    }
+
+    /**
+     * 把内容保存到目标路径；临时文件直接移动，不再复制
+     */
+    public void moveTo(Path target) throws IOException {
+        if (file == null) {
+            Files.write(target, data);
+            return;
+        }
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        file = target;
+    }
+}
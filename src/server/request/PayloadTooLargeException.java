@@ -0,0 +1,21 @@
+package server.request;
+
+import java.io.IOException;
+
+/**
+ * 请求体超过配置的最大长度
+ */
+public class PayloadTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBodySize;
+
+    public PayloadTooLargeException(long maxBodySize) {
+        super("Request body exceeds " + maxBodySize + " bytes");
+        this.maxBodySize = maxBodySize;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+}
@@ -0,0 +1,58 @@
+package server.request;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 流式请求体
+ * 处理器读取时才从连接读入数据并解码（定长或chunked），内存占用与请求体大小无关；
+ * 超过最大长度时read()抛出PayloadTooLargeException。处理器没有读完的部分由RequestDecoder在下一个请求前跳过。
+ * 客户端发送了 Expect: 100-continue 时，第一次需要从连接读入数据前才回复 100 Continue；
+ * 处理器不读取请求体就作答时，客户端不会发送请求体。
+ */
+class RequestBodyStream extends InputStream {
+    private final BodyDecoder decoder;
+    private final BodySource source;
+    private boolean continuePending;
+
+    RequestBodyStream(BodyDecoder decoder, BodySource source, boolean expectContinue) {
+        this.decoder = decoder;
+        this.source = source;
+        this.continuePending = expectContinue;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = decoder.read(source.buffer(), b, off, len);
+            if (n != 0) {
+                return n;
+            }
+            if (continuePending) {
+                continuePending = false;
+                source.sendContinue();
+            }
+            if (!source.fill()) {
+                throw new EOFException("Connection closed in the middle of a request body");
+            }
+        }
+    }
+
+    /**
+     * 客户端是否仍在等待 100 Continue，即请求体还没有被请求过
+     */
+    boolean isContinuePending() {
+        return continuePending && !decoder.isFinished();
+    }
+}
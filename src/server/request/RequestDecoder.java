@@ -0,0 +1,506 @@
+package server.request;
+
+import common.ByteScanner;
+import common.HeaderTable;
+import common.HttpConstants;
+import common.HttpHeaders;
+import common.HttpMethod;
+import common.HttpStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 增量HTTP请求解码器
+ * 直接在ByteBuffer上按状态机解析请求行、请求头和请求体。数据不足时记住已扫描到的位置，
+ * 新数据到达后从断点继续，不会重复扫描，也不需要预先找到\r\n\r\n。
+ * 请求头只记录名称和值的偏移量，String在访问时才创建（见HeaderTable.addRaw）。
+ *
+ * 请求体按长度分三种方式处理：
+ * - 不超过INLINE_BODY_LIMIT的定长请求体：在读缓冲区中攒齐后一次复制（快速路径）；
+ * - 更大的、chunked的或带 Expect: 100-continue 的请求体，设置了BodySource（阻塞引擎）时：
+ *   请求头解析完即返回，请求体以流的形式交给处理器按需读取，未读完的部分在下一次decode()时跳过；
+ * - 否则（NIO引擎）：边读边解码到逐步扩容的字节数组，读缓冲区不需要容纳整个请求体。
+ *   带 Expect: 100-continue 时，调用方通过pollContinue()在请求体到达前取得请求头并决定是否继续。
+ * 任何方式下请求体超过maxBodySize都会抛出PayloadTooLargeException；请求体累积在数组中时（没有BodySource），
+ * 上限另外不超过MAX_BUFFERED_BODY_SIZE，流式请求体的长度只受maxBodySize限制。
+ * 无法确定请求边界时（Content-Length重复或与Transfer-Encoding同时出现、不支持的Transfer-Encoding、
+ * chunk格式错误）抛出BadRequestException，防止前后端对请求边界理解不一致（请求走私）。
+ *
+ * 每个连接持有一个实例，阻塞引擎和NIO引擎共用。缓冲区约定：
+ * - decode()时缓冲区处于读模式，position为当前请求的起点；
+ * - 返回null表示数据不足，此时缓冲区中未消费的字节必须原样保留（可以compact移动）；
+ * - 需要读入更多数据前调用prepareRead()整理缓冲区。
+ */
+public class RequestDecoder {
+    // 请求头最大长度，超过则关闭连接
+    public static final int MAX_HEADER_SIZE = 64 * 1024;
+    // 不超过该长度的定长请求体在读缓冲区中攒齐后一次复制
+    public static final int INLINE_BODY_LIMIT = 64 * 1024;
+    // 请求体累积到字节数组时（没有BodySource）的长度上限
+    public static final int MAX_BUFFERED_BODY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final int REQUEST_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    // 流式请求体已交给处理器，下一个请求之前要跳过未读完的部分
+    private static final int DRAIN = 3;
+
+    private static final byte[] HTTP_1_1 = HttpConstants.HTTP_1_1.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_1_0 = HttpConstants.HTTP_1_0.getBytes(StandardCharsets.US_ASCII);
+    // 查找分隔符（CR/LF/冒号/空格）的实现，见ByteScanner
+    private static final ByteScanner SCANNER = ByteScanner.get();
+
+    private int state;
+    // 以下偏移量都相对于当前请求的起点
+    private int scanned;
+    private int lineStart;
+    private int headLength;
+
+    private HttpMethod method;
+    private int uriStart;
+    private int uriEnd;
+    private String httpVersion;
+
+    // 每个请求头占4个int：名称起止、值起止
+    private int[] headerOffsets = new int[64];
+    private int headerCount;
+    private long contentLength;
+    private boolean hasContentLength;
+    private boolean chunked;
+    private boolean expectContinue;
+
+    private final long maxBodySize;
+    // 大请求体或chunked请求体的解码器；为null时走快速路径
+    private BodyDecoder body;
+    private byte[] bodyBytes;
+    private int bodyLength;
+    private BodySource source;
+    private RequestBodyStream stream;
+
+    private HttpRequest pending;
+    // 非null时每个请求都复用这个对象（见ExchangeRecycler）
+    private HttpRequest reusable;
+
+    public RequestDecoder() {
+        this(HttpConstants.DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * @param maxBodySize 请求体最大字节数
+     */
+    public RequestDecoder(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        reset();
+    }
+
+    /**
+     * 从缓冲区解码一个请求
+     *
+     * @param buffer 读模式的堆缓冲区
+     * @return 完整的请求（position移到请求之后）；数据不足返回null（position不变）
+     * @throws PayloadTooLargeException 请求体超过最大长度
+     * @throws BadRequestException 无法确定请求体边界
+     * @throws IOException 请求格式错误或请求头过大
+     */
+    public HttpRequest decode(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("RequestDecoder requires a heap buffer");
+        }
+        if (state == DRAIN) {
+            if (!body.skip(buffer)) {
+                return null;
+            }
+            reset();
+        }
+        byte[] data = buffer.array();
+        int base = buffer.arrayOffset() + buffer.position();
+        int available = buffer.remaining();
+
+        if (state != BODY) {
+            if (!decodeHead(data, base, available)) {
+                if (available >= MAX_HEADER_SIZE) {
+                    throw new IOException("Request header too large");
+                }
+                return null;
+            }
+            if (chunked) {
+                contentLength = 0;
+            } else if (contentLength > getMaxBodySize()) {
+                throw new PayloadTooLargeException(getMaxBodySize());
+            }
+            pending = createRequest(data, base);
+            state = BODY;
+            expectContinue = (chunked || contentLength > 0) && pending.expectsContinue();
+
+            if (chunked || contentLength > INLINE_BODY_LIMIT || (expectContinue && source != null)) {
+                buffer.position(buffer.position() + headLength);
+                body = chunked ? BodyDecoder.chunked(getMaxBodySize())
+                        : BodyDecoder.fixedLength(contentLength, getMaxBodySize());
+                if (source != null) {
+                    HttpRequest request = pending;
+                    stream = new RequestBodyStream(body, source, expectContinue);
+                    request.setBodyStream(stream);
+                    pending = null;
+                    state = DRAIN;
+                    return request;
+                }
+            }
+        }
+        if (body != null) {
+            return accumulateBody(buffer);
+        }
+
+        long total = headLength + contentLength;
+        if (available < total) {
+            return null;
+        }
+        HttpRequest request = pending;
+        if (contentLength > 0) {
+            request.setBody(Arrays.copyOfRange(data, base + headLength, base + (int) total));
+        }
+        buffer.position(buffer.position() + (int) total);
+        reset();
+        return request;
+    }
+
+    /**
+     * 读入更多数据前整理缓冲区：丢弃已消费的字节，容量不足以放下当前请求时扩容
+     *
+     * @param buffer 读模式的缓冲区
+     * @return 写模式的缓冲区（可能是新分配的）
+     */
+    public ByteBuffer prepareRead(ByteBuffer buffer) {
+        long needed = Math.max(buffer.remaining() + 1L, state == BODY && body == null ? headLength + contentLength : 0);
+        if (needed <= buffer.capacity()) {
+            buffer.compact();
+            return buffer;
+        }
+        int newCapacity = (int) Math.max(needed, Math.min(Integer.MAX_VALUE - 8L, buffer.capacity() * 2L));
+        ByteBuffer larger = ByteBuffer.allocate(newCapacity);
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * 设置复用的请求对象；传null则每个请求新建对象
+     */
+    public void setReusableRequest(HttpRequest request) {
+        this.reusable = request;
+    }
+
+    /**
+     * 设置流式请求体的数据来源（阻塞引擎）；未设置时大请求体在解码器内累积
+     */
+    void setBodySource(BodySource source) {
+        this.source = source;
+    }
+
+    /**
+     * 最近一个请求的请求体是否因超过最大长度而中止（处理器读取流式请求体时触发）
+     */
+    public boolean isBodyTooLarge() {
+        return body != null && body.getError() instanceof PayloadTooLargeException;
+    }
+
+    /**
+     * 最近一个请求的请求体格式错误时返回该错误（处理器读取流式请求体时触发），否则返回null
+     * 此时连接已无法对齐到下一个请求，应回复错误后关闭。
+     */
+    public BadRequestException getBodyError() {
+        if (body != null && body.getError() instanceof BadRequestException) {
+            return (BadRequestException) body.getError();
+        }
+        return null;
+    }
+
+    /**
+     * 生效的请求体上限：流式请求体为maxBodySize，累积到数组时不超过MAX_BUFFERED_BODY_SIZE
+     */
+    public long getMaxBodySize() {
+        return source != null ? maxBodySize : Math.min(maxBodySize, MAX_BUFFERED_BODY_SIZE);
+    }
+
+    /**
+     * 请求头已完整、请求体尚未到达，且客户端在等待 100 Continue 时返回只有请求头的请求（每个请求只返回一次）
+     * 调用方据此决定回复 100 Continue 还是直接作答。用于没有设置BodySource的NIO引擎。
+     */
+    public HttpRequest pollContinue() {
+        if (state != BODY || !expectContinue) {
+            return null;
+        }
+        expectContinue = false;
+        return pending;
+    }
+
+    /**
+     * 流式请求体的客户端是否仍在等待 100 Continue（处理器没有读取请求体）
+     * 此时客户端可能不会再发送请求体，连接无法继续对齐到下一个请求，应在响应后关闭。
+     */
+    public boolean isAwaitingContinue() {
+        return stream != null && stream.isContinuePending();
+    }
+
+    /**
+     * 流式请求体是否还有数据要从连接读入（阻塞引擎：处理器读取请求体期间）
+     */
+    public boolean isReadingBody() {
+        return state == DRAIN && !body.isFinished();
+    }
+
+    /**
+     * 当前请求是否已读入部分数据
+     */
+    public boolean isPartial() {
+        return state != REQUEST_LINE || scanned > lineStart;
+    }
+
+    private void reset() {
+        state = REQUEST_LINE;
+        scanned = 0;
+        lineStart = 0;
+        headLength = 0;
+        method = null;
+        httpVersion = null;
+        headerCount = 0;
+        contentLength = 0;
+        hasContentLength = false;
+        chunked = false;
+        expectContinue = false;
+        stream = null;
+        body = null;
+        bodyBytes = null;
+        bodyLength = 0;
+        pending = null;
+    }
+
+    /**
+     * 把缓冲区中已有的请求体解码到bodyBytes；按实际到达的数据扩容，而不是按Content-Length预先分配
+     */
+    private HttpRequest accumulateBody(ByteBuffer buffer) throws IOException {
+        while (true) {
+            if (bodyBytes == null) {
+                bodyBytes = new byte[(int) Math.min(INLINE_BODY_LIMIT, chunked ? getMaxBodySize() : contentLength)];
+            } else if (bodyLength == bodyBytes.length) {
+                long limit = chunked ? getMaxBodySize() : contentLength;
+                int grown = (int) Math.min(Math.max(bodyBytes.length * 2L, HttpConstants.BUFFER_SIZE), limit);
+                bodyBytes = Arrays.copyOf(bodyBytes, grown);
+            }
+            int n = body.read(buffer, bodyBytes, bodyLength, bodyBytes.length - bodyLength);
+            if (n == -1) {
+                break;
+            }
+            if (n == 0) {
+                return null;
+            }
+            bodyLength += n;
+        }
+        HttpRequest request = pending;
+        request.setBody(bodyLength == bodyBytes.length ? bodyBytes : Arrays.copyOf(bodyBytes, bodyLength));
+        reset();
+        return request;
+    }
+
+    /**
+     * 扫描请求行和请求头
+     *
+     * @return true 请求头已完整
+     */
+    private boolean decodeHead(byte[] data, int base, int available) throws IOException {
+        while (scanned < available) {
+            int lf = indexOfLf(data, base + scanned, base + available);
+            if (lf == -1) {
+                scanned = available;
+                return false;
+            }
+            int next = lf - base + 1;
+            int lineEnd = next - 1;
+            if (lineEnd > lineStart && data[base + lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+
+            if (lineEnd == lineStart) {
+                scanned = next;
+                lineStart = next;
+                if (state == HEADERS) {
+                    headLength = next;
+                    return true;
+                }
+                // 请求之间多余的空行，忽略
+                continue;
+            }
+
+            if (state == REQUEST_LINE) {
+                parseRequestLine(data, base, lineStart, lineEnd);
+                state = HEADERS;
+            } else {
+                parseHeaderLine(data, base, lineStart, lineEnd);
+            }
+            scanned = next;
+            lineStart = next;
+        }
+        return false;
+    }
+
+    /**
+     * 解析请求行: METHOD URI HTTP/VERSION
+     */
+    private void parseRequestLine(byte[] data, int base, int start, int end) throws IOException {
+        int firstSpace = indexOf(data, base, start, end, (byte) ' ');
+        int secondSpace = firstSpace == -1 ? -1 : indexOf(data, base, firstSpace + 1, end, (byte) ' ');
+        if (secondSpace != -1 && indexOf(data, base, secondSpace + 1, end, (byte) ' ') != -1) {
+            // 多于两个空格
+            firstSpace = -1;
+        }
+        if (firstSpace <= start || secondSpace <= firstSpace + 1 || secondSpace >= end - 1) {
+            throw new IOException("Invalid request line: "
+                    + new String(data, base + start, end - start, StandardCharsets.UTF_8));
+        }
+
+        method = HttpMethod.fromBytes(data, base + start, firstSpace - start);
+        uriStart = firstSpace + 1;
+        uriEnd = secondSpace;
+        httpVersion = version(data, base + secondSpace + 1, end - secondSpace - 1);
+    }
+
+    /**
+     * 记录请求头偏移量；Content-Length在这里直接从字节解析，用于分帧
+     * 分帧头部有歧义时拒绝请求：Content-Length出现多次（即使值相同）、
+     * Content-Length与Transfer-Encoding同时出现、Transfer-Encoding出现多次。
+     */
+    private void parseHeaderLine(byte[] data, int base, int start, int end) throws IOException {
+        int colon = indexOf(data, base, start, end, (byte) ':');
+        if (colon == -1) {
+            return;
+        }
+
+        int nameStart = skipWhitespace(data, base, start, colon);
+        int nameEnd = trimWhitespace(data, base, nameStart, colon);
+        int valueStart = skipWhitespace(data, base, colon + 1, end);
+        int valueEnd = trimWhitespace(data, base, valueStart, end);
+
+        if (headerCount * 4 == headerOffsets.length) {
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+        }
+        int slot = headerCount * 4;
+        headerOffsets[slot] = nameStart;
+        headerOffsets[slot + 1] = nameEnd;
+        headerOffsets[slot + 2] = valueStart;
+        headerOffsets[slot + 3] = valueEnd;
+        headerCount++;
+
+        if (HeaderTable.equalsIgnoreCase(data, base + nameStart, base + nameEnd, HttpHeaders.CONTENT_LENGTH)) {
+            if (hasContentLength) {
+                throw new BadRequestException("Duplicate Content-Length");
+            }
+            if (chunked) {
+                throw new BadRequestException("Both Transfer-Encoding and Content-Length");
+            }
+            contentLength = parseContentLength(data, base + valueStart, base + valueEnd);
+            hasContentLength = true;
+        } else if (HeaderTable.equalsIgnoreCase(data, base + nameStart, base + nameEnd, HttpHeaders.TRANSFER_ENCODING)) {
+            // 只支持chunked
+            if (!HeaderTable.equalsIgnoreCase(data, base + valueStart, base + valueEnd, "chunked")) {
+                throw new BadRequestException(HttpStatus.NOT_IMPLEMENTED, "Unsupported Transfer-Encoding: "
+                        + new String(data, base + valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII));
+            }
+            if (chunked) {
+                throw new BadRequestException("Duplicate Transfer-Encoding");
+            }
+            if (hasContentLength) {
+                throw new BadRequestException("Both Transfer-Encoding and Content-Length");
+            }
+            chunked = true;
+        }
+    }
+
+    private HttpRequest createRequest(byte[] data, int base) {
+        HttpRequest request;
+        if (reusable != null) {
+            request = reusable;
+            request.reset();
+        } else {
+            request = new HttpRequest();
+        }
+        // 请求头整体复制一次；读缓冲区之后会被复用，各个头部的String仍按需创建
+        byte[] head = request.headBuffer(headLength);
+        System.arraycopy(data, base, head, 0, headLength);
+        request.setMethod(method);
+        request.setUri(new String(head, uriStart, uriEnd - uriStart, StandardCharsets.UTF_8));
+        request.setHttpVersion(httpVersion);
+        HeaderTable headers = request.getHeaderTable();
+        for (int i = 0; i < headerCount * 4; i += 4) {
+            headers.addRaw(head, headerOffsets[i], headerOffsets[i + 1], headerOffsets[i + 2], headerOffsets[i + 3]);
+        }
+        return request;
+    }
+
+    private static long parseContentLength(byte[] data, int start, int end) throws BadRequestException {
+        if (start == end) {
+            throw new BadRequestException("Invalid Content-Length");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new BadRequestException("Invalid Content-Length");
+            }
+            // 超出long范围时饱和，由请求体上限检查回复413
+            value = value > (Long.MAX_VALUE - digit) / 10 ? Long.MAX_VALUE : value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * 常见的协议版本直接返回常量，不创建String
+     */
+    private static String version(byte[] data, int offset, int length) {
+        if (regionEquals(data, offset, length, HTTP_1_1)) {
+            return HttpConstants.HTTP_1_1;
+        }
+        if (regionEquals(data, offset, length, HTTP_1_0)) {
+            return HttpConstants.HTTP_1_0;
+        }
+        return new String(data, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean regionEquals(byte[] data, int offset, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfLf(byte[] data, int from, int to) {
+        return SCANNER.indexOf(data, from, to, (byte) '\n');
+    }
+
+    /**
+     * 在data[base+from, base+to)中查找target，返回相对base的下标
+     */
+    private static int indexOf(byte[] data, int base, int from, int to, byte target) {
+        int found = SCANNER.indexOf(data, base + from, base + to, target);
+        return found == -1 ? -1 : found - base;
+    }
+
+    private static int skipWhitespace(byte[] data, int base, int from, int to) {
+        while (from < to && (data[base + from] == ' ' || data[base + from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimWhitespace(byte[] data, int base, int from, int to) {
+        while (to > from && (data[base + to - 1] == ' ' || data[base + to - 1] == '\t')) {
+            to--;
+        }
+        return to;
+    }
+}
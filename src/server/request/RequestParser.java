@@ -1,5 +1,6 @@
 package server.request;
 
+import common.HttpConstants;
 import common.HttpMethod;
 
 import java.io.BufferedInputStream;
@@ -16,13 +17,50 @@ public class RequestParser {
     /**
      * 从输入流解析HTTP请求
      * 
-     * @param inputStream 输入流
+     * 调用方需传入与连接同生命周期的缓冲流：预读的下一个（流水线）请求的字节保留在其中，
+     * 下次调用时继续解析，不会丢失。
+     *
+     * @param bis 连接级缓冲输入流
      * @return 解析后的HttpRequest对象，如果连接关闭返回null
      * @throws IOException IO异常
      */
-    public static HttpRequest parse(InputStream inputStream) throws IOException {
-        BufferedInputStream bis = new BufferedInputStream(inputStream);
+    public static HttpRequest parse(BufferedInputStream bis) throws IOException {
+        HttpRequest request = parseHead(bis);
+        if (request == null) {
+            return null;
+        }
+
+        // 读取请求体
+        int contentLength = request.getContentLength();
+        if (contentLength > HttpConstants.DEFAULT_MAX_BODY_SIZE) {
+            // 先检查长度再分配，避免按不可信的Content-Length分配大数组
+            throw new PayloadTooLargeException(HttpConstants.DEFAULT_MAX_BODY_SIZE);
+        }
+        if (contentLength > 0) {
+            byte[] body = new byte[contentLength];
+            int totalRead = 0;
+            while (totalRead < contentLength) {
+                int read = bis.read(body, totalRead, contentLength - totalRead);
+                if (read == -1) {
+                    break;
+                }
+                totalRead += read;
+            }
+            request.setBody(body);
+        }
+
+        return request;
+    }
 
+    /**
+     * 只解析请求行和请求头，不读取请求体
+     * 供已自行完成报文分帧的调用方（如NIO引擎）使用
+     *
+     * @param bis 输入流
+     * @return 解析后的HttpRequest对象，如果连接关闭返回null
+     * @throws IOException IO异常
+     */
+    public static HttpRequest parseHead(InputStream bis) throws IOException {
         // 读取请求行
         String requestLine = readLine(bis);
         if (requestLine == null || requestLine.isEmpty()) {
@@ -48,23 +86,8 @@ public class RequestParser {
             if (colonIndex != -1) {
                 String name = headerLine.substring(0, colonIndex).trim();
                 String value = headerLine.substring(colonIndex + 1).trim();
-                request.setHeader(name, value);
-            }
-        }
-
-        // 读取请求体
-        int contentLength = request.getContentLength();
-        if (contentLength > 0) {
-            byte[] body = new byte[contentLength];
-            int totalRead = 0;
-            while (totalRead < contentLength) {
-                int read = bis.read(body, totalRead, contentLength - totalRead);
-                if (read == -1) {
-                    break;
-                }
-                totalRead += read;
+                request.getHeaderTable().add(name, value);
             }
-            request.setBody(body);
         }
 
         return request;
@@ -0,0 +1,80 @@
+package server.request;
+
+import common.HttpConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 阻塞引擎的请求读取器
+ * 持有连接级读缓冲区：流水线请求中预读的字节在多次解码之间保留。
+ * 同时作为流式请求体的数据来源，处理器读取请求体时才从Socket读入。
+ */
+public class RequestReader implements BodySource {
+    private static final byte[] CONTINUE = HttpConstants.CONTINUE_RESPONSE.getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final RequestDecoder decoder;
+    // 读模式：position为下一个未处理字节
+    private ByteBuffer buffer;
+
+    /**
+     * @param out 阻塞读取前先flush，使已合并的响应及时写出
+     */
+    public RequestReader(InputStream in, OutputStream out, RequestDecoder decoder) {
+        this.in = in;
+        this.out = out;
+        this.decoder = decoder;
+        this.buffer = ByteBuffer.allocate(HttpConstants.BUFFER_SIZE);
+        this.buffer.flip();
+        decoder.setBodySource(this);
+    }
+
+    /**
+     * 解码下一个请求，数据不足时从Socket读入更多字节
+     *
+     * @return 请求；连接已关闭返回null
+     */
+    public HttpRequest next() throws IOException {
+        while (true) {
+            HttpRequest request = decoder.decode(buffer);
+            if (request != null) {
+                return request;
+            }
+            if (!fill()) {
+                if (decoder.isPartial()) {
+                    throw new IOException("Connection closed in the middle of a request");
+                }
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public boolean fill() throws IOException {
+        // 即将阻塞读取：先把已缓冲的响应写出
+        out.flush();
+
+        buffer = decoder.prepareRead(buffer);
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        buffer.flip();
+        return read != -1;
+    }
+
+    @Override
+    public void sendContinue() throws IOException {
+        out.write(CONTINUE);
+    }
+}
@@ -0,0 +1,117 @@
+package server.response;
+
+import common.HttpConstants;
+import common.HttpHeaders;
+import common.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 预编码的固定响应
+ * 内容不随请求变化的响应（404/405/500页面、固定目标的重定向、/api/status）在注册时创建一次：
+ * 除Date和连接相关头部（Connection、Keep-Alive）以外的响应头连同结尾空行编码为一个字节数组，响应体也只编码一次。
+ * 写出时ResponseEncoder只需复制预编码的状态行、当前秒的Date行、连接头和这段字节，不再做任何格式化。
+ *
+ * 不可变，可以被所有连接共享；通过 ResponseBuilder.canned() 返回给连接。
+ */
+public final class CannedResponse {
+    private final HttpStatus status;
+    // 头部名称和值，供HttpResponse.getHeader()查询和转为普通响应时复制
+    private final String[] names;
+    private final String[] values;
+    // "Name: value\r\n"... "\r\n"
+    private final byte[] headerBlock;
+    private final byte[] body;
+
+    private CannedResponse(HttpStatus status, String[] names, String[] values, byte[] body) {
+        this.status = status;
+        this.names = names;
+        this.values = values;
+        this.body = body;
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(128);
+        for (int i = 0; i < names.length; i++) {
+            byte[] line = (names[i] + ": " + values[i] + "\r\n").getBytes(StandardCharsets.UTF_8);
+            block.write(line, 0, line.length);
+        }
+        block.write('\r');
+        block.write('\n');
+        this.headerBlock = block.toByteArray();
+    }
+
+    /**
+     * 带响应体的固定响应
+     */
+    public static CannedResponse of(HttpStatus status, String contentType, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new CannedResponse(status,
+                new String[] { HttpHeaders.SERVER, HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH },
+                new String[] { HttpConstants.SERVER_NAME, contentType, String.valueOf(bytes.length) },
+                bytes);
+    }
+
+    /**
+     * JSON格式的200响应
+     */
+    public static CannedResponse json(String json) {
+        return of(HttpStatus.OK, "application/json; charset=UTF-8", json);
+    }
+
+    /**
+     * 到固定地址的301/302重定向，响应体与ResponseBuilder.movedPermanently()/found()相同
+     */
+    public static CannedResponse redirect(HttpStatus status, String location) {
+        byte[] bytes = ("<html><body><h1>" + status.getCode() + " " + status.getReasonPhrase()
+                + "</h1><p>Redirecting to <a href=\"" + location + "\">" + location + "</a></p></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+        return new CannedResponse(status,
+                new String[] { HttpHeaders.SERVER, HttpHeaders.LOCATION, HttpHeaders.CONTENT_TYPE,
+                        HttpHeaders.CONTENT_LENGTH },
+                new String[] { HttpConstants.SERVER_NAME, location, "text/html; charset=UTF-8",
+                        String.valueOf(bytes.length) },
+                bytes);
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * 响应体；数组共享，调用方不能修改
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * 查找预编码的头部（不区分大小写）；没有时返回null
+     */
+    public String getHeader(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    int headerCount() {
+        return names.length;
+    }
+
+    String headerName(int index) {
+        return names[index];
+    }
+
+    String headerValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * 预编码的响应头（不含状态行、Date和连接头，含结尾空行）；数组共享，调用方不能修改
+     */
+    byte[] headerBlock() {
+        return headerBlock;
+    }
+}
@@ -0,0 +1,120 @@
+package server.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式响应体的输出流：按 Transfer-Encoding: chunked 分帧写到连接
+ * 每个块在同一个缓冲区中组帧（前面预留块大小行，后面追加CRLF），以一次write交给下层并flush，
+ * 缓冲区只分配一次，内存占用与响应体大小无关。
+ * 不使用chunked时（HTTP/1.0客户端）原样写出，响应体以关闭连接结束。
+ *
+ * close()写出剩余数据和结束块，但不关闭下层输出流。
+ */
+public class ChunkedOutputStream extends OutputStream {
+    // 块大小行的最大长度：8位十六进制 + CRLF
+    private static final int HEADER_RESERVE = 10;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final FlushPolicy policy;
+    private final boolean chunked;
+    // [HEADER_RESERVE][数据 chunkSize][CRLF]
+    private final byte[] frame;
+    private final int chunkSize;
+    private int count;
+    private boolean closed;
+
+    public ChunkedOutputStream(OutputStream out, int chunkSize, FlushPolicy policy, boolean chunked) {
+        this.out = out;
+        this.chunkSize = chunkSize;
+        this.policy = policy;
+        this.chunked = chunked;
+        this.frame = new byte[HEADER_RESERVE + chunkSize + 2];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        frame[HEADER_RESERVE + count++] = (byte) b;
+        if (count == chunkSize || policy == FlushPolicy.EVERY_WRITE) {
+            emitChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, frame, HEADER_RESERVE + count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == chunkSize) {
+                emitChunk();
+            }
+        }
+        if (policy == FlushPolicy.EVERY_WRITE) {
+            emitChunk();
+        }
+    }
+
+    /**
+     * 立即把已写入的数据作为一个块发出
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        emitChunk();
+    }
+
+    /**
+     * 发出剩余数据和结束块
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        emitChunk();
+        closed = true;
+        if (chunked) {
+            out.write(LAST_CHUNK);
+        }
+        out.flush();
+    }
+
+    private void emitChunk() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (!chunked) {
+            out.write(frame, HEADER_RESERVE, count);
+        } else {
+            // 块大小行右对齐写在数据前面的预留区
+            int start = HEADER_RESERVE;
+            frame[--start] = '\n';
+            frame[--start] = '\r';
+            int size = count;
+            do {
+                frame[--start] = HEX[size & 0xF];
+                size >>>= 4;
+            } while (size != 0);
+            int end = HEADER_RESERVE + count;
+            frame[end] = '\r';
+            frame[end + 1] = '\n';
+            out.write(frame, start, end + 2 - start);
+        }
+        count = 0;
+        out.flush();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
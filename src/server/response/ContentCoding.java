@@ -0,0 +1,154 @@
+package server.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 响应内容编码（RFC 7231 3.1.2.1）
+ * HTTP的 deflate 指zlib格式（RFC 1950），不是裸deflate流。
+ */
+public enum ContentCoding {
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Content-Encoding中的名称
+     */
+    public String token() {
+        return token;
+    }
+
+    /**
+     * 按给定压缩级别压缩
+     *
+     * @param level Deflater压缩级别，1（最快）~ 9（最小）
+     */
+    public byte[] compress(byte[] data, int level) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try {
+            if (this == GZIP) {
+                try (OutputStream out = new LevelGzipOutputStream(buffer, level)) {
+                    out.write(data);
+                }
+            } else {
+                Deflater deflater = new Deflater(level);
+                try (OutputStream out = new DeflaterOutputStream(buffer, deflater, 8192)) {
+                    out.write(data);
+                } finally {
+                    deflater.end();
+                }
+            }
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 按Accept-Encoding协商编码：取q值最大的gzip或deflate，q值相同时优先gzip；
+     * "*" 匹配未单独列出的编码，q=0表示不接受
+     *
+     * @return 选中的编码；不压缩（没有该头、只接受identity或都不接受）时返回null
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        double[] q = weights(acceptEncoding);
+        ContentCoding best = null;
+        double bestQ = 0;
+        for (ContentCoding coding : values()) {
+            if (q[coding.ordinal()] > bestQ) {
+                best = coding;
+                bestQ = q[coding.ordinal()];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Accept-Encoding是否接受指定编码（q值大于0，或由"*"接受），不考虑其他编码的偏好
+     */
+    public static boolean accepts(String acceptEncoding, ContentCoding coding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return false;
+        }
+        return weights(acceptEncoding)[coding.ordinal()] > 0;
+    }
+
+    /**
+     * 各编码的q值，按ordinal()索引；未列出的编码取"*"的q值，都没有时为-1
+     */
+    private static double[] weights(String acceptEncoding) {
+        // 按声明顺序：GZIP、DEFLATE；-1表示未列出
+        double[] q = { -1, -1 };
+        double wildcard = -1;
+        int start = 0;
+        int length = acceptEncoding.length();
+        while (start < length) {
+            int comma = acceptEncoding.indexOf(',', start);
+            int end = comma == -1 ? length : comma;
+            int semicolon = acceptEncoding.indexOf(';', start);
+            int nameEnd = semicolon != -1 && semicolon < end ? semicolon : end;
+            String name = acceptEncoding.substring(start, nameEnd).trim();
+            double weight = nameEnd < end ? qValue(acceptEncoding.substring(nameEnd + 1, end)) : 1;
+
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                q[0] = Math.max(q[0], weight);
+            } else if (name.equalsIgnoreCase("deflate")) {
+                q[1] = Math.max(q[1], weight);
+            } else if (name.equals("*")) {
+                wildcard = weight;
+            }
+            start = end + 1;
+        }
+
+        for (int i = 0; i < q.length; i++) {
+            if (q[i] < 0) {
+                q[i] = wildcard;
+            }
+        }
+        return q;
+    }
+
+    /**
+     * 解析参数中的q值，如 " q=0.8"；格式错误按0处理
+     */
+    private static double qValue(String params) {
+        int i = params.indexOf("q=");
+        if (i == -1) {
+            i = params.indexOf("Q=");
+        }
+        if (i == -1) {
+            return 1;
+        }
+        int end = params.indexOf(';', i);
+        try {
+            double q = Double.parseDouble(params.substring(i + 2, end == -1 ? params.length() : end).trim());
+            return q < 0 || q > 1 ? 0 : q;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 可指定压缩级别的GZIPOutputStream（它自己创建的Deflater固定为默认级别）
+     */
+    private static final class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+}
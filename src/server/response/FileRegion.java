@@ -0,0 +1,89 @@
+package server.response;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件区间响应体
+ * 响应体是文件中的一段字节，写出时由FileChannel.transferTo()直接从文件复制到套接字
+ * （Linux上为sendfile，内核完成复制），文件内容不进入Java堆。
+ *
+ * 只记录路径和区间，不可变；文件在写出时才打开，写完即关闭。
+ */
+public final class FileRegion {
+    private final Path file;
+    private final long position;
+    private final long count;
+
+    /**
+     * @param file     文件路径
+     * @param position 起始偏移
+     * @param count    字节数（即Content-Length）
+     */
+    public FileRegion(Path file, long position, long count) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid file region: position=" + position + ", count=" + count);
+        }
+        this.file = file;
+        this.position = position;
+        this.count = count;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 区间结束位置（不含）
+     */
+    public long getEnd() {
+        return position + count;
+    }
+
+    /**
+     * 以只读方式打开文件
+     */
+    public FileChannel open() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * 从from开始把区间的剩余部分写到target
+     * 阻塞通道写完整个区间才返回；非阻塞通道写满套接字发送缓冲区即返回，由调用方在可写时再次调用。
+     *
+     * @param file 由open()打开的文件
+     * @return 写出后的位置；等于getEnd()表示写完
+     * @throws IOException 写出失败，或文件在发送期间被截短（已发送的Content-Length无法兑现）
+     */
+    public long transfer(FileChannel file, long from, WritableByteChannel target) throws IOException {
+        long end = getEnd();
+        while (from < end) {
+            long n = file.transferTo(from, end - from, target);
+            if (n == 0) {
+                if (from >= file.size()) {
+                    throw new IOException("File truncated while sending: " + this.file);
+                }
+                // 非阻塞通道的发送缓冲区已满
+                break;
+            }
+            from += n;
+        }
+        return from;
+    }
+
+    @Override
+    public String toString() {
+        return file + " [" + position + ", " + getEnd() + ")";
+    }
+}
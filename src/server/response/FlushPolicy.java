@@ -0,0 +1,16 @@
+package server.response;
+
+/**
+ * 流式响应体的发送策略
+ */
+public enum FlushPolicy {
+    /**
+     * 攒满一个块（HttpResponse.getChunkSize()）再发出，处理器调用flush()时立即发出已写入的部分；吞吐量最好
+     */
+    BUFFERED,
+
+    /**
+     * 每次write都立即作为一个块发出；适合生成缓慢、需要尽快送达的内容（进度、日志）
+     */
+    EVERY_WRITE
+}
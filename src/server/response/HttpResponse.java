@@ -1,75 +1,210 @@
 package server.response;
 
+import common.HeaderTable;
 import common.HttpConstants;
+import common.HttpDate;
 import common.HttpHeaders;
 import common.HttpStatus;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * HTTP响应类
  * 用于构建和发送HTTP响应
+ *
+ * 开启对象复用时，每个连接持有一个响应对象：处理请求前通过bind()绑定到当前线程，
+ * ResponseBuilder经obtain()取用它而不是新建，写出后由连接reset()复用。
+ *
+ * 设置了CannedResponse时，状态、响应体和除Date、连接头以外的响应头都来自它的预编码字节；
+ * 之后修改其他头部、状态或响应体会先把它的内容复制为普通响应（见materialize()）。
+ *
+ * 响应体有四种形式，互斥：字节数组（setBody）、ByteBuffer（setBufferBody，如内存映射的文件）、
+ * 流式响应体（setStreamingBody）和文件区间（setFileBody）。
  */
 public class HttpResponse {
     private String httpVersion;
     private HttpStatus status;
-    private Map<String, String> headers;
+    private final HeaderTable headers;
     private byte[] body;
+    // ByteBuffer响应体（与body二选一），写出时直接交给通道，不复制到堆上
+    private ByteBuffer bufferBody;
+    // 流式响应体（与body二选一）
+    private StreamingBody streamingBody;
+    private int chunkSize;
+    private FlushPolicy flushPolicy;
+    // 文件区间响应体（与body、streamingBody三选一），写出时由transferTo发送
+    private FileRegion fileBody;
+    // 预编码的固定响应；为null时使用上面的字段
+    private CannedResponse canned;
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+    // build()/writeTo()使用的编码器，第一次调用时创建；连接的写出路径使用连接自己的ResponseEncoder
+    private ResponseEncoder encoder;
 
-    static {
-        DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
+    // 复用状态
+    private boolean handedOut;
+    private boolean released;
+
+    // 流式响应体默认的块大小
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<HttpResponse> BOUND = new ThreadLocal<>();
 
     public HttpResponse() {
+        this.headers = new HeaderTable();
+        reset();
+    }
+
+    /**
+     * 获取当前线程绑定的可复用响应；未绑定或本次请求已取用过时新建
+     */
+    public static HttpResponse obtain() {
+        HttpResponse response = BOUND.get();
+        if (response != null && !response.handedOut) {
+            response.handedOut = true;
+            return response;
+        }
+        return new HttpResponse();
+    }
+
+    /**
+     * 绑定当前线程处理请求时使用的响应对象；传null解除绑定
+     */
+    public static void bind(HttpResponse response) {
+        BOUND.set(response);
+    }
+
+    /**
+     * 恢复为初始状态以便复用（保留头部表和编码器）
+     */
+    public void reset() {
         this.httpVersion = HttpConstants.HTTP_1_1;
         this.status = HttpStatus.OK;
-        this.headers = new LinkedHashMap<>();
+        this.body = null;
+        this.bufferBody = null;
+        this.streamingBody = null;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.flushPolicy = FlushPolicy.BUFFERED;
+        this.fileBody = null;
+        this.canned = null;
+        this.handedOut = false;
+        this.headers.clear();
 
         // 设置默认头部
         setHeader(HttpHeaders.SERVER, HttpConstants.SERVER_NAME);
-        setHeader(HttpHeaders.DATE, DATE_FORMAT.format(new Date()));
+        // 同一秒内的响应共用一个字符串，编码时直接复制预编码的字节
+        setHeader(HttpHeaders.DATE, HttpDate.now());
+    }
+
+    /**
+     * 标记为已释放（对象复用的调试模式）：之后处理器再访问会抛出异常
+     */
+    public void release() {
+        this.released = true;
     }
 
     // Getters and Setters
     public String getHttpVersion() {
+        ensureLive();
         return httpVersion;
     }
 
     public void setHttpVersion(String httpVersion) {
+        ensureLive();
         this.httpVersion = httpVersion;
     }
 
     public HttpStatus getStatus() {
+        ensureLive();
         return status;
     }
 
     public void setStatus(HttpStatus status) {
+        ensureLive();
+        materialize();
         this.status = status;
     }
 
+    /**
+     * 获取所有响应头的Map快照
+     */
     public Map<String, String> getHeaders() {
-        return headers;
+        ensureLive();
+        Map<String, String> map = headers.toMap();
+        if (canned != null) {
+            for (int i = 0; i < canned.headerCount(); i++) {
+                map.put(canned.headerName(i), canned.headerValue(i));
+            }
+        }
+        return map;
     }
 
     public String getHeader(String name) {
-        return headers.get(name);
+        ensureLive();
+        String value = headers.get(name);
+        if (value == null && canned != null) {
+            value = canned.getHeader(name);
+        }
+        return value;
     }
 
     public void setHeader(String name, String value) {
-        this.headers.put(name, value);
+        ensureLive();
+        if (canned != null && !isPerRequestHeader(name)) {
+            materialize();
+        }
+        headers.set(name, value);
+    }
+
+    public void removeHeader(String name) {
+        ensureLive();
+        if (canned != null && !isPerRequestHeader(name)) {
+            materialize();
+        }
+        headers.remove(name);
     }
 
     public byte[] getBody() {
-        return body;
+        ensureLive();
+        return canned != null ? canned.getBody() : body;
+    }
+
+    /**
+     * 使用预编码的固定响应（状态、响应头和响应体）
+     */
+    public void setCanned(CannedResponse canned) {
+        ensureLive();
+        materialize();
+        if (streamingBody != null) {
+            streamingBody = null;
+            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        }
+        this.body = null;
+        this.bufferBody = null;
+        this.fileBody = null;
+        this.status = canned.getStatus();
+        this.canned = canned;
+    }
+
+    /**
+     * 编码器使用；没有设置时返回null
+     */
+    CannedResponse getCanned() {
+        return canned;
     }
 
     public void setBody(byte[] body) {
+        ensureLive();
+        materialize();
+        if (streamingBody != null) {
+            streamingBody = null;
+            removeHeader(HttpHeaders.TRANSFER_ENCODING);
+        }
+        this.fileBody = null;
+        this.bufferBody = null;
         this.body = body;
         if (body != null) {
             setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.length));
@@ -77,11 +212,128 @@ public class HttpResponse {
     }
 
     public void setBody(String body) {
-        try {
-            setBody(body.getBytes("UTF-8"));
-        } catch (Exception e) {
-            setBody(body.getBytes());
+        setBody(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 设置流式响应体：以 Transfer-Encoding: chunked 发送，不设置Content-Length
+     * 响应头发出后连接调用body.writeTo()，处理器在其中边生成边写出（见StreamingBody）。
+     */
+    public void setStreamingBody(StreamingBody streamingBody) {
+        ensureLive();
+        materialize();
+        this.streamingBody = streamingBody;
+        this.body = null;
+        this.bufferBody = null;
+        this.fileBody = null;
+        removeHeader(HttpHeaders.CONTENT_LENGTH);
+        setHeader(HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CHUNKED_VALUE);
+    }
+
+    /**
+     * 设置ByteBuffer响应体：发送[position, limit)之间的字节，Content-Length为剩余字节数
+     * 写出时会移动缓冲区的position，共享的缓冲区应先duplicate()。
+     */
+    public void setBufferBody(ByteBuffer bufferBody) {
+        ensureLive();
+        materialize();
+        if (streamingBody != null) {
+            streamingBody = null;
+            removeHeader(HttpHeaders.TRANSFER_ENCODING);
+        }
+        this.body = null;
+        this.fileBody = null;
+        this.bufferBody = bufferBody;
+        setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(bufferBody.remaining()));
+    }
+
+    /**
+     * ByteBuffer响应体；没有时返回null
+     */
+    public ByteBuffer getBufferBody() {
+        ensureLive();
+        return bufferBody;
+    }
+
+    /**
+     * 设置文件区间响应体：Content-Length为区间长度，写出时文件内容由内核直接复制到套接字
+     */
+    public void setFileBody(FileRegion fileBody) {
+        ensureLive();
+        materialize();
+        if (streamingBody != null) {
+            streamingBody = null;
+            removeHeader(HttpHeaders.TRANSFER_ENCODING);
+        }
+        this.body = null;
+        this.bufferBody = null;
+        this.fileBody = fileBody;
+        setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(fileBody.getCount()));
+    }
+
+    /**
+     * 文件区间响应体；没有时返回null
+     */
+    public FileRegion getFileBody() {
+        ensureLive();
+        return fileBody;
+    }
+
+    public StreamingBody getStreamingBody() {
+        ensureLive();
+        return streamingBody;
+    }
+
+    public boolean isStreaming() {
+        ensureLive();
+        return streamingBody != null;
+    }
+
+    public int getChunkSize() {
+        ensureLive();
+        return chunkSize;
+    }
+
+    /**
+     * 流式响应体每个块的最大字节数（也是输出缓冲区的大小）
+     */
+    public void setChunkSize(int chunkSize) {
+        ensureLive();
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
         }
+        this.chunkSize = chunkSize;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        ensureLive();
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        ensureLive();
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * 按请求的HTTP版本确定流式响应体的分帧方式
+     * HTTP/1.0不支持chunked：去掉Transfer-Encoding，响应体原样发送并以关闭连接结束。
+     *
+     * @return true 写完响应后必须关闭连接
+     */
+    public boolean prepareStreaming(String requestVersion) {
+        if (!isStreaming() || HttpConstants.HTTP_1_1.equals(requestVersion)) {
+            return false;
+        }
+        removeHeader(HttpHeaders.TRANSFER_ENCODING);
+        return true;
+    }
+
+    /**
+     * 流式响应体是否按chunked分帧（prepareStreaming()之后调用）
+     */
+    public boolean isChunked() {
+        return HttpHeaders.CHUNKED_VALUE.equals(getHeader(HttpHeaders.TRANSFER_ENCODING));
     }
 
     public void setContentType(String contentType) {
@@ -89,16 +341,27 @@ public class HttpResponse {
     }
 
     public void setKeepAlive(boolean keepAlive) {
+        setKeepAlive(keepAlive, HttpConstants.DEFAULT_TIMEOUT / 1000, HttpConstants.MAX_KEEP_ALIVE_REQUESTS);
+    }
+
+    /**
+     * 设置连接头
+     *
+     * @param timeoutSeconds    服务器实际的空闲超时
+     * @param remainingRequests 该连接还能处理的请求数
+     */
+    public void setKeepAlive(boolean keepAlive, int timeoutSeconds, int remainingRequests) {
         if (keepAlive) {
             setHeader(HttpHeaders.CONNECTION, HttpHeaders.KEEP_ALIVE_VALUE);
-            setHeader(HttpHeaders.KEEP_ALIVE, "timeout=60, max=100");
+            setHeader(HttpHeaders.KEEP_ALIVE, "timeout=" + timeoutSeconds + ", max=" + remainingRequests);
         } else {
             setHeader(HttpHeaders.CONNECTION, HttpHeaders.CLOSE_VALUE);
+            removeHeader(HttpHeaders.KEEP_ALIVE);
         }
     }
 
     public void setLastModified(Date date) {
-        setHeader(HttpHeaders.LAST_MODIFIED, DATE_FORMAT.format(date));
+        setHeader(HttpHeaders.LAST_MODIFIED, HttpDate.format(date.getTime()));
     }
 
     public void setLocation(String location) {
@@ -106,56 +369,102 @@ public class HttpResponse {
     }
 
     /**
-     * 构建响应报文字节数组
+     * 构建响应报文字节数组（响应头和响应体复制到一个新数组，用于需要整段报文的场景）；不支持流式响应和文件响应体
      */
     public byte[] build() throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        // 状态行
-        String statusLine = httpVersion + " " + status.getCode() + " " + status.getReasonPhrase();
-        baos.write(statusLine.getBytes("UTF-8"));
-        baos.write(HttpConstants.CRLF.getBytes("UTF-8"));
-
-        // 响应头
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            String headerLine = entry.getKey() + ": " + entry.getValue();
-            baos.write(headerLine.getBytes("UTF-8"));
-            baos.write(HttpConstants.CRLF.getBytes("UTF-8"));
+        if (isStreaming()) {
+            throw new IllegalStateException("A streaming response cannot be built into a byte array");
         }
-
-        // 空行
-        baos.write(HttpConstants.CRLF.getBytes("UTF-8"));
-
-        // 响应体
-        if (body != null && body.length > 0) {
-            baos.write(body);
+        if (fileBody != null) {
+            throw new IllegalStateException("A file response cannot be built into a byte array");
         }
-
-        return baos.toByteArray();
+        ResponseEncoder encoder = encoder();
+        encoder.encodeHead(this);
+        int headLength = encoder.length();
+        byte[] body = getBody();
+        int bodyLength = body != null ? body.length : bufferBody != null ? bufferBody.remaining() : 0;
+        byte[] result = new byte[headLength + bodyLength];
+        System.arraycopy(encoder.buffer(), 0, result, 0, headLength);
+        if (body != null) {
+            System.arraycopy(body, 0, result, headLength, bodyLength);
+        } else if (bufferBody != null) {
+            bufferBody.duplicate().get(result, headLength, bodyLength);
+        }
+        return result;
     }
 
     /**
      * 发送响应到输出流
      */
     public void send(OutputStream outputStream) throws IOException {
-        byte[] responseBytes = build();
-        outputStream.write(responseBytes);
+        writeTo(outputStream);
         outputStream.flush();
     }
 
+    /**
+     * 写出响应但不flush，便于调用方合并多个响应；响应体直接写出，不再复制。
+     * 流式响应在这里写完整个响应体并flush；文件响应体经由输出流复制。
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        encoder().writeTo(this, outputStream);
+    }
+
+    /**
+     * 编码器读取响应头
+     */
+    HeaderTable headerTable() {
+        ensureLive();
+        return headers;
+    }
+
+    /**
+     * 每个请求单独设置的头部：Date和连接头，修改它们不影响预编码的固定响应
+     */
+    static boolean isPerRequestHeader(String name) {
+        return HttpHeaders.DATE.equalsIgnoreCase(name) || HttpHeaders.CONNECTION.equalsIgnoreCase(name)
+                || HttpHeaders.KEEP_ALIVE.equalsIgnoreCase(name);
+    }
+
+    /**
+     * 把固定响应的头部和响应体复制为普通响应，之后可以任意修改
+     */
+    private void materialize() {
+        CannedResponse c = canned;
+        if (c == null) {
+            return;
+        }
+        canned = null;
+        for (int i = 0; i < c.headerCount(); i++) {
+            headers.set(c.headerName(i), c.headerValue(i));
+        }
+        // 响应体数组写出后不会被修改，可以共享
+        body = c.getBody();
+    }
+
+    private ResponseEncoder encoder() {
+        if (encoder == null) {
+            encoder = new ResponseEncoder();
+        }
+        return encoder;
+    }
+
+    private void ensureLive() {
+        if (released) {
+            throw new IllegalStateException("HttpResponse used after it was released; "
+                    + "a handler kept a reference past its return");
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(httpVersion).append(" ").append(status).append("\n");
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
+        for (Map.Entry<String, String> entry : getHeaders().entrySet()) {
             sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
         }
+        byte[] body = getBody();
         if (body != null && body.length > 0 && body.length < 1000) {
-            try {
-                sb.append("\n").append(new String(body, "UTF-8"));
-            } catch (Exception e) {
-                sb.append("\n[Binary data: ").append(body.length).append(" bytes]");
-            }
+            sb.append("\n").append(new String(body, StandardCharsets.UTF_8));
         }
         return sb.toString();
     }
@@ -1,18 +1,33 @@
 package server.response;
 
+import common.HttpHeaders;
 import common.HttpStatus;
+import server.request.BadRequestException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  * HTTP响应构建器
  * 提供便捷的方法来创建各种类型的响应
+ * 内容固定的错误页面（404、405、500）使用类加载时创建的CannedResponse，每次调用不再拼接页面和头部。
  */
 public class ResponseBuilder {
+    private static final CannedResponse NOT_FOUND = CannedResponse.of(HttpStatus.NOT_FOUND,
+            "text/html; charset=UTF-8",
+            "<html><body><h1>404 Not Found</h1><p>The requested resource was not found on this server.</p></body></html>");
+    private static final CannedResponse METHOD_NOT_ALLOWED = CannedResponse.of(HttpStatus.METHOD_NOT_ALLOWED,
+            "text/html; charset=UTF-8",
+            "<html><body><h1>405 Method Not Allowed</h1><p>The request method is not supported for this resource.</p></body></html>");
+    private static final CannedResponse INTERNAL_SERVER_ERROR = CannedResponse.of(HttpStatus.INTERNAL_SERVER_ERROR,
+            "text/html; charset=UTF-8",
+            "<html><body><h1>500 Internal Server Error</h1><p>An unexpected error occurred.</p></body></html>");
 
     /**
      * 创建成功响应 (200 OK)
      */
     public static HttpResponse ok() {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.OK);
         return response;
     }
@@ -58,10 +73,51 @@ public class ResponseBuilder {
     }
 
     /**
-     * 创建301永久重定向响应
+     * 创建二进制响应，响应体为ByteBuffer的剩余字节（如内存映射文件的duplicate()），写出时不复制到堆上
+     */
+    public static HttpResponse binary(ByteBuffer data, String contentType) {
+        HttpResponse response = ok();
+        response.setContentType(contentType);
+        response.setBufferBody(data);
+        return response;
+    }
+
+    /**
+     * 创建文件响应：响应体为整个文件，写出时由transferTo从文件直接发送（见FileRegion）
+     *
+     * @param length 文件长度，作为Content-Length
+     */
+    public static HttpResponse file(Path file, long length, String contentType) {
+        HttpResponse response = ok();
+        response.setContentType(contentType);
+        response.setFileBody(new FileRegion(file, 0, length));
+        return response;
+    }
+
+    /**
+     * 创建流式响应：以 Transfer-Encoding: chunked 边生成边发送（见StreamingBody）
+     */
+    public static HttpResponse stream(String contentType, StreamingBody body) {
+        HttpResponse response = ok();
+        response.setContentType(contentType);
+        response.setStreamingBody(body);
+        return response;
+    }
+
+    /**
+     * 返回预编码的固定响应（见CannedResponse）；常量响应应在注册路由时创建一次
+     */
+    public static HttpResponse canned(CannedResponse canned) {
+        HttpResponse response = HttpResponse.obtain();
+        response.setCanned(canned);
+        return response;
+    }
+
+    /**
+     * 创建301永久重定向响应；目标固定时使用CannedResponse.redirect()
      */
     public static HttpResponse movedPermanently(String location) {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.MOVED_PERMANENTLY);
         response.setLocation(location);
         response.setContentType("text/html; charset=UTF-8");
@@ -71,10 +127,10 @@ public class ResponseBuilder {
     }
 
     /**
-     * 创建302临时重定向响应
+     * 创建302临时重定向响应；目标固定时使用CannedResponse.redirect()
      */
     public static HttpResponse found(String location) {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.FOUND);
         response.setLocation(location);
         response.setContentType("text/html; charset=UTF-8");
@@ -87,7 +143,7 @@ public class ResponseBuilder {
      * 创建304未修改响应
      */
     public static HttpResponse notModified() {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.NOT_MODIFIED);
         // 304响应不应该有响应体
         return response;
@@ -97,30 +153,35 @@ public class ResponseBuilder {
      * 创建400错误请求响应
      */
     public static HttpResponse badRequest(String message) {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.BAD_REQUEST);
         response.setContentType("application/json; charset=UTF-8");
         response.setBody("{\"code\":400,\"message\":\"" + escapeJson(message) + "\"}");
         return response;
     }
 
+    /**
+     * 请求无法分帧时的响应：按异常的状态码回复400或501
+     */
+    public static HttpResponse badRequest(BadRequestException e) {
+        if (e.getStatus() == HttpStatus.NOT_IMPLEMENTED) {
+            return notImplemented(e.getMessage());
+        }
+        return badRequest(e.getMessage());
+    }
+
     /**
      * 创建404未找到响应
      */
     public static HttpResponse notFound() {
-        HttpResponse response = new HttpResponse();
-        response.setStatus(HttpStatus.NOT_FOUND);
-        response.setContentType("text/html; charset=UTF-8");
-        response.setBody(
-                "<html><body><h1>404 Not Found</h1><p>The requested resource was not found on this server.</p></body></html>");
-        return response;
+        return canned(NOT_FOUND);
     }
 
     /**
      * 创建404未找到响应，带自定义消息
      */
     public static HttpResponse notFound(String message) {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.NOT_FOUND);
         response.setContentType("application/json; charset=UTF-8");
         response.setBody("{\"code\":404,\"message\":\"" + escapeJson(message) + "\"}");
@@ -131,11 +192,17 @@ public class ResponseBuilder {
      * 创建405方法不允许响应
      */
     public static HttpResponse methodNotAllowed() {
-        HttpResponse response = new HttpResponse();
-        response.setStatus(HttpStatus.METHOD_NOT_ALLOWED);
-        response.setContentType("text/html; charset=UTF-8");
-        response.setBody(
-                "<html><body><h1>405 Method Not Allowed</h1><p>The request method is not supported for this resource.</p></body></html>");
+        return canned(METHOD_NOT_ALLOWED);
+    }
+
+    /**
+     * 创建413请求体过大响应
+     */
+    public static HttpResponse payloadTooLarge(long maxBodySize) {
+        HttpResponse response = HttpResponse.obtain();
+        response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE);
+        response.setContentType("application/json; charset=UTF-8");
+        response.setBody("{\"code\":413,\"message\":\"Request body exceeds " + maxBodySize + " bytes\"}");
         return response;
     }
 
@@ -143,25 +210,43 @@ public class ResponseBuilder {
      * 创建500服务器内部错误响应
      */
     public static HttpResponse internalServerError() {
-        HttpResponse response = new HttpResponse();
-        response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR);
-        response.setContentType("text/html; charset=UTF-8");
-        response.setBody(
-                "<html><body><h1>500 Internal Server Error</h1><p>An unexpected error occurred.</p></body></html>");
-        return response;
+        return canned(INTERNAL_SERVER_ERROR);
     }
 
     /**
      * 创建500服务器内部错误响应，带自定义消息
      */
     public static HttpResponse internalServerError(String message) {
-        HttpResponse response = new HttpResponse();
+        HttpResponse response = HttpResponse.obtain();
         response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR);
         response.setContentType("application/json; charset=UTF-8");
         response.setBody("{\"code\":500,\"message\":\"" + escapeJson(message) + "\"}");
         return response;
     }
 
+    /**
+     * 创建501未实现响应（如不支持的Transfer-Encoding）
+     */
+    public static HttpResponse notImplemented(String message) {
+        HttpResponse response = HttpResponse.obtain();
+        response.setStatus(HttpStatus.NOT_IMPLEMENTED);
+        response.setContentType("application/json; charset=UTF-8");
+        response.setBody("{\"code\":501,\"message\":\"" + escapeJson(message) + "\"}");
+        return response;
+    }
+
+    /**
+     * 创建503服务不可用响应，告知客户端retryAfterSeconds秒后重试
+     */
+    public static HttpResponse serviceUnavailable(int retryAfterSeconds) {
+        HttpResponse response = HttpResponse.obtain();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType("application/json; charset=UTF-8");
+        response.setBody("{\"code\":503,\"message\":\"Server is busy, please retry later\"}");
+        return response;
+    }
+
     /**
      * 转义JSON字符串中的特殊字符
      */
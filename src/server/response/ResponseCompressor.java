@@ -0,0 +1,166 @@
+package server.response;
+
+import common.EntityTag;
+import common.HttpHeaders;
+import common.HttpStatus;
+import server.mime.MimeTypes;
+import server.request.HttpRequest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * 响应压缩
+ * 按请求的Accept-Encoding协商gzip/deflate，只压缩文本类型（MimeTypes.isTextType）且不小于阈值的200响应体。
+ * 可压缩的响应无论是否压缩都带 Vary: Accept-Encoding，避免中间缓存把压缩版本发给不支持的客户端；
+ * 压缩后响应的ETag附加编码名（见EntityTag.withCoding）。
+ *
+ * Router在处理器返回后调用apply()，每次请求都重新压缩；内容固定的响应（如静态文件）
+ * 应由处理器自己缓存压缩结果并设置Content-Encoding，apply()会跳过已编码的响应。
+ *
+ * 线程安全：统计计数使用原子变量，其余字段不可变。
+ */
+public class ResponseCompressor {
+    // 默认最小压缩长度：更小的响应体压缩后节省的字节抵不上gzip头尾和CPU开销
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    // 每次请求都压缩时使用的级别；缓存的压缩结果只生成一次，使用最高级别
+    public static final int DYNAMIC_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    public static final int CACHED_LEVEL = Deflater.BEST_COMPRESSION;
+
+    private final boolean enabled;
+    private final int minSize;
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong precompressed = new AtomicLong();
+
+    /**
+     * @param enabled 为false时不压缩，也不添加Vary
+     * @param minSize 最小压缩长度（字节）
+     */
+    public ResponseCompressor(boolean enabled, int minSize) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * 内容类型和长度是否值得压缩
+     */
+    public boolean isCompressible(String contentType, long length) {
+        return enabled && length >= minSize && MimeTypes.isTextType(contentType);
+    }
+
+    /**
+     * 按请求协商编码
+     *
+     * @return 选中的编码；不可压缩或客户端不接受时返回null
+     */
+    public ContentCoding negotiate(HttpRequest request, String contentType, long length) {
+        if (!isCompressible(contentType, length)) {
+            return null;
+        }
+        return ContentCoding.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * 压缩处理器返回的响应；已设置Content-Encoding、流式响应和非200响应保持不变
+     */
+    public void apply(HttpRequest request, HttpResponse response) {
+        if (!enabled || response.isStreaming() || response.getStatus() != HttpStatus.OK
+                || response.getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+            return;
+        }
+        byte[] body = response.getBody();
+        if (body == null) {
+            return;
+        }
+        String contentType = response.getHeader(HttpHeaders.CONTENT_TYPE);
+        if (!isCompressible(contentType, body.length)) {
+            return;
+        }
+        addVary(response);
+        ContentCoding coding = ContentCoding.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (coding == null) {
+            return;
+        }
+        byte[] encoded = compress(coding, body, DYNAMIC_LEVEL);
+        if (encoded.length >= body.length) {
+            // 已经压缩过的文本（如内嵌base64数据），保持原样
+            return;
+        }
+        response.setBody(encoded);
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, coding.token());
+        String entityTag = response.getHeader(HttpHeaders.ETAG);
+        if (entityTag != null) {
+            // 压缩后是另一个表示，不能沿用原始内容的标签
+            response.setHeader(HttpHeaders.ETAG, EntityTag.withCoding(entityTag, coding.token()));
+        }
+    }
+
+    /**
+     * 压缩并计入统计
+     */
+    public byte[] compress(ContentCoding coding, byte[] data, int level) {
+        long start = System.nanoTime();
+        byte[] encoded = coding.compress(data, level);
+        compressNanos.addAndGet(System.nanoTime() - start);
+        compressed.incrementAndGet();
+        bytesIn.addAndGet(data.length);
+        bytesOut.addAndGet(encoded.length);
+        return encoded;
+    }
+
+    /**
+     * 使用了缓存的压缩结果（处理器调用）
+     */
+    public void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    /**
+     * 发送了磁盘上预先压缩的文件（处理器调用）
+     */
+    public void recordPrecompressed() {
+        precompressed.incrementAndGet();
+    }
+
+    /**
+     * 统计（JSON），供 /api/stats 使用
+     * compressed为实际执行压缩的次数，bytesIn/bytesOut为这些压缩的输入/输出字节数，cacheHits为复用缓存结果的响应数，
+     * precompressed为直接发送预压缩文件（.gz）的响应数
+     */
+    public String statsJson() {
+        return "{\"enabled\":" + enabled
+                + ",\"minSize\":" + minSize
+                + ",\"compressed\":" + compressed.get()
+                + ",\"bytesIn\":" + bytesIn.get()
+                + ",\"bytesOut\":" + bytesOut.get()
+                + ",\"compressMillis\":" + compressNanos.get() / 1_000_000
+                + ",\"cacheHits\":" + cacheHits.get()
+                + ",\"precompressed\":" + precompressed.get()
+                + "}";
+    }
+
+    /**
+     * 添加 Vary: Accept-Encoding（保留已有的Vary值）
+     */
+    public static void addVary(HttpResponse response) {
+        String vary = response.getHeader(HttpHeaders.VARY);
+        if (vary == null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        } else if (!vary.contains(HttpHeaders.ACCEPT_ENCODING) && !vary.equals("*")) {
+            response.setHeader(HttpHeaders.VARY, vary + ", " + HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package server.response;
+
+import common.HeaderTable;
+import common.HttpConstants;
+import common.HttpDate;
+import common.HttpHeaders;
+import common.HttpStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 响应编码器
+ * 把状态行和响应头一次编码到可复用的字节缓冲区，响应体不经过缓冲区、不复制。
+ * 每个HttpStatus的状态行和常用头部名称（连同": "）在类加载时预先编码，
+ * 编码时直接复制字节数组，只有头部值需要逐字符转换。
+ * CannedResponse的其余响应头已整段预编码，只需在前面补上Date和连接头。
+ *
+ * 每个连接（阻塞引擎）或每个事件循环（NIO引擎）持有一个实例，单线程使用。
+ *
+ * 阻塞引擎的连接有底层SocketChannel时，较大的响应体与响应头通过一次聚集写(gathering write)发出；
+ * 否则先写响应头再直接写响应体数组，两种方式都不复制响应体。
+ * ByteBuffer响应体（如内存映射的文件）同样与响应头聚集写出；
+ * 文件区间响应体（FileRegion）在有通道时由FileChannel.transferTo()直接发送，文件内容不经过Java堆。
+ */
+public final class ResponseEncoder {
+    // 响应体达到该长度时使用聚集写；更小的响应体与响应头一起进入连接的写缓冲，便于合并流水线响应
+    public static final int GATHER_THRESHOLD = HttpConstants.BUFFER_SIZE;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    // 按HttpStatus.ordinal()索引
+    private static final byte[][] STATUS_LINES_1_1 = encodeStatusLines(HttpConstants.HTTP_1_1);
+    private static final byte[][] STATUS_LINES_1_0 = encodeStatusLines(HttpConstants.HTTP_1_0);
+    // 响应中常用的头部名称，预编码为 "Name: "
+    private static final String[] COMMON_NAMES = {
+            HttpHeaders.SERVER, HttpHeaders.DATE, HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.CONNECTION, HttpHeaders.KEEP_ALIVE, HttpHeaders.TRANSFER_ENCODING,
+            HttpHeaders.CACHE_CONTROL, HttpHeaders.LOCATION, HttpHeaders.LAST_MODIFIED, HttpHeaders.ETAG,
+            HttpHeaders.RETRY_AFTER, HttpHeaders.CONTENT_DISPOSITION, HttpHeaders.CONTENT_ENCODING, HttpHeaders.VARY
+    };
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+
+    static {
+        for (String name : COMMON_NAMES) {
+            HEADER_NAMES.put(name, (name + ": ").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private byte[] buffer;
+    private int length;
+    // 聚集写使用的缓冲区数组，[0]为包装buffer的响应头视图，buffer扩容后重新包装
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    public ResponseEncoder() {
+        this.buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * 编码状态行和响应头（含结尾空行）；结果在buffer()[0, length())中，下一次编码时被覆盖
+     */
+    public void encodeHead(HttpResponse response) {
+        length = 0;
+
+        HttpStatus status = response.getStatus();
+        String version = response.getHttpVersion();
+        if (HttpConstants.HTTP_1_1.equals(version)) {
+            write(STATUS_LINES_1_1[status.ordinal()]);
+        } else if (HttpConstants.HTTP_1_0.equals(version)) {
+            write(STATUS_LINES_1_0[status.ordinal()]);
+        } else {
+            writeString(version);
+            writeString(" " + status.getCode() + " " + status.getReasonPhrase());
+            write(CRLF);
+        }
+
+        CannedResponse canned = response.getCanned();
+        HeaderTable headers = response.headerTable();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.getName(i);
+            if (name == null || (canned != null && !HttpResponse.isPerRequestHeader(name))) {
+                // 固定响应的其他头部（如Server）已在预编码的字节中
+                continue;
+            }
+            String value = headers.getValue(i);
+            if (HttpHeaders.DATE.equals(name)) {
+                // 当前秒的Date头整行已预编码
+                byte[] line = HttpDate.headerLine(value);
+                if (line != null) {
+                    write(line);
+                    continue;
+                }
+            }
+            byte[] encodedName = HEADER_NAMES.get(name);
+            if (encodedName != null) {
+                write(encodedName);
+            } else {
+                writeString(name);
+                ensureCapacity(2);
+                buffer[length++] = ':';
+                buffer[length++] = ' ';
+            }
+            writeString(value);
+            write(CRLF);
+        }
+
+        // 固定响应的头部块以空行结尾
+        write(canned != null ? canned.headerBlock() : CRLF);
+    }
+
+    /**
+     * 写出响应但不flush：先写编码好的响应头，再直接写响应体数组。
+     * 流式响应先flush响应头（客户端立即收到状态行），再在当前线程运行StreamingBody，写完结束块后返回。
+     */
+    public void writeTo(HttpResponse response, OutputStream out) throws IOException {
+        FileRegion file = response.getFileBody();
+        if (file != null) {
+            writeFileBody(response, file, out, null);
+            return;
+        }
+        encodeHead(response);
+        out.write(buffer, 0, length);
+        if (response.isStreaming()) {
+            writeStreamingBody(response, out);
+            return;
+        }
+        byte[] body = response.getBody();
+        if (body != null && body.length > 0) {
+            out.write(body);
+        }
+        ByteBuffer bufferBody = response.getBufferBody();
+        if (bufferBody != null) {
+            // 没有通道：分段复制到输出流
+            WritableByteChannel target = Channels.newChannel(out);
+            while (bufferBody.hasRemaining()) {
+                target.write(bufferBody);
+            }
+        }
+    }
+
+    /**
+     * 写出响应但不flush；channel不为null且响应体不小于GATHER_THRESHOLD时，
+     * 先flush out中尚未写出的数据，再把响应头和响应体一次聚集写到channel；
+     * 文件响应体在响应头flush后由transferTo写到channel
+     *
+     * @param out     连接的缓冲输出流
+     * @param channel out底层的通道（阻塞模式），没有时为null
+     */
+    public void writeTo(HttpResponse response, OutputStream out, GatheringByteChannel channel) throws IOException {
+        FileRegion file = response.getFileBody();
+        if (file != null) {
+            writeFileBody(response, file, out, channel);
+            return;
+        }
+        byte[] body = response.getBody();
+        ByteBuffer bodyBuffer = response.getBufferBody();
+        int bodyLength = body != null ? body.length : bodyBuffer != null ? bodyBuffer.remaining() : 0;
+        if (channel == null || bodyLength < GATHER_THRESHOLD) {
+            writeTo(response, out);
+            return;
+        }
+        encodeHead(response);
+        out.flush();
+
+        ByteBuffer head = gather[0];
+        if (head == null || head.array() != buffer) {
+            head = ByteBuffer.wrap(buffer);
+            gather[0] = head;
+        }
+        head.clear().limit(length);
+        if (bodyBuffer == null) {
+            bodyBuffer = ByteBuffer.wrap(body);
+        }
+        gather[1] = bodyBuffer;
+        try {
+            while (bodyBuffer.hasRemaining()) {
+                channel.write(gather);
+            }
+        } finally {
+            gather[1] = null;
+        }
+    }
+
+    /**
+     * 写出文件响应体：先打开文件（文件已被删除时在写出任何字节前失败，调用方关闭连接），
+     * 再写出响应头；有通道时flush响应头后transferTo，否则经输出流复制
+     */
+    private void writeFileBody(HttpResponse response, FileRegion region, OutputStream out,
+            WritableByteChannel channel) throws IOException {
+        try (FileChannel file = region.open()) {
+            encodeHead(response);
+            out.write(buffer, 0, length);
+            WritableByteChannel target;
+            if (channel != null) {
+                out.flush();
+                target = channel;
+            } else {
+                target = Channels.newChannel(out);
+            }
+            if (region.transfer(file, region.getPosition(), target) < region.getEnd()) {
+                // 阻塞通道不应出现；响应体不完整，连接不能继续使用
+                throw new IOException("Incomplete file transfer: " + region);
+            }
+        }
+    }
+
+    /**
+     * 在当前线程生成流式响应体；out的阻塞写入就是背压
+     */
+    private static void writeStreamingBody(HttpResponse response, OutputStream out) throws IOException {
+        out.flush();
+        ChunkedOutputStream chunks = new ChunkedOutputStream(out, response.getChunkSize(),
+                response.getFlushPolicy(), response.isChunked());
+        try {
+            response.getStreamingBody().writeTo(chunks);
+        } catch (RuntimeException e) {
+            throw new IOException("Streaming body failed: " + e, e);
+        }
+        chunks.close();
+    }
+
+    /**
+     * 编码响应头并返回它的独立副本，用于写出时间晚于下一次编码的场景（NIO写队列）
+     */
+    public ByteBuffer encodeHeadCopy(HttpResponse response) {
+        encodeHead(response);
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, length));
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeString(String value) {
+        int valueLength = value.length();
+        ensureCapacity(valueLength);
+        int start = length;
+        for (int i = 0; i < valueLength; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // 非ASCII字符按UTF-8编码
+                length = start;
+                write(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer[length++] = (byte) c;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private static byte[][] encodeStatusLines(String version) {
+        HttpStatus[] statuses = HttpStatus.values();
+        byte[][] lines = new byte[statuses.length][];
+        for (HttpStatus status : statuses) {
+            lines[status.ordinal()] = (version + " " + status.getCode() + " " + status.getReasonPhrase() + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,16 @@
+package server.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 流式响应体
+ * 响应头发出之后由连接调用，处理器把内容边生成边写入out，不需要先在内存中构造完整的响应体。
+ * out按响应的FlushPolicy把数据分成chunked块发出；调用out.flush()立即发出已写入的数据。
+ * 写入会在客户端接收不及时阻塞（背压），因此占用的内存与响应体大小无关。
+ * 不需要关闭out，返回即表示响应体结束；抛出异常时连接被中断，客户端收不到结束块。
+ */
+@FunctionalInterface
+public interface StreamingBody {
+    void writeTo(OutputStream out) throws IOException;
+}
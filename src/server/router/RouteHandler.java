@@ -16,4 +16,24 @@ public interface RouteHandler {
      * @return HTTP响应对象
      */
     HttpResponse handle(HttpRequest request);
+
+    /**
+     * 读取请求体之前，只根据请求行和请求头检查请求
+     * 客户端发送 Expect: 100-continue 时调用：返回null则回复100 Continue让客户端发送请求体，
+     * 否则直接以返回的响应作答，请求体不再传输。
+     *
+     * @return 拒绝请求时的响应；接受时返回null
+     */
+    default HttpResponse precheck(HttpRequest request) {
+        return null;
+    }
+
+    /**
+     * 处理这个请求时是否可能阻塞（读取磁盘、等待其他线程等）
+     * NIO引擎据此决定在事件循环线程上直接调用handle()，还是交给处理器线程池；其他引擎每个连接一个线程，不使用。
+     * 默认返回false，即处理器只做内存中的计算；会访问文件、网络或长时间占用CPU的处理器应返回true。
+     */
+    default boolean mayBlock(HttpRequest request) {
+        return false;
+    }
 }
@@ -1,10 +1,13 @@
 package server.router;
 
 import common.HttpMethod;
+import server.request.BadRequestException;
 import server.request.HttpRequest;
 import server.response.HttpResponse;
 import server.response.ResponseBuilder;
+import server.response.ResponseCompressor;
 
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,10 +16,15 @@ import java.util.Map;
  * 根据请求路径和方法分发到对应的处理器
  */
 public class Router {
+    private static final RouteHandler METHOD_NOT_ALLOWED = request -> ResponseBuilder.methodNotAllowed();
+    private static final RouteHandler NOT_FOUND = request -> ResponseBuilder.notFound();
+
     // 存储路由: Method -> Path -> Handler
     private final Map<HttpMethod, Map<String, RouteHandler>> routes;
     // 默认处理器（用于处理静态文件等）
     private RouteHandler defaultHandler;
+    // 响应压缩，为null时不压缩
+    private ResponseCompressor compressor;
 
     public Router() {
         this.routes = new HashMap<>();
@@ -65,10 +73,74 @@ public class Router {
         return this;
     }
 
+    /**
+     * 设置响应压缩（按Accept-Encoding压缩处理器返回的响应）
+     */
+    public Router setCompressor(ResponseCompressor compressor) {
+        this.compressor = compressor;
+        return this;
+    }
+
+    public ResponseCompressor getCompressor() {
+        return compressor;
+    }
+
     /**
      * 路由请求到对应的处理器
      */
     public HttpResponse route(HttpRequest request) {
+        RouteHandler handler = resolve(request);
+        HttpResponse response;
+        try {
+            response = handler.handle(request);
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof BadRequestException) {
+                // 请求体格式错误是客户端的问题，不打印堆栈；连接处理器随后关闭连接
+                System.err.println("Malformed request body: " + e.getCause().getMessage());
+                return ResponseBuilder.badRequest((BadRequestException) e.getCause());
+            }
+            e.printStackTrace();
+            return ResponseBuilder.internalServerError(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseBuilder.internalServerError(e.getMessage());
+        }
+        if (compressor != null) {
+            compressor.apply(request, response);
+        }
+        return response;
+    }
+
+    /**
+     * 处理该请求的处理器是否可能阻塞（见RouteHandler.mayBlock）
+     */
+    public boolean mayBlock(HttpRequest request) {
+        return resolve(request).mayBlock(request);
+    }
+
+    /**
+     * 只根据请求行和请求头检查请求，不调用处理器的handle（用于 Expect: 100-continue）
+     * 没有匹配的路由时直接返回404/405，否则交给处理器的precheck
+     *
+     * @return 拒绝请求时的响应；可以继续读取请求体时返回null
+     */
+    public HttpResponse precheck(HttpRequest request) {
+        RouteHandler handler = resolve(request);
+        if (handler == METHOD_NOT_ALLOWED || handler == NOT_FOUND) {
+            return handler.handle(request);
+        }
+        try {
+            return handler.precheck(request);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseBuilder.internalServerError(e.getMessage());
+        }
+    }
+
+    /**
+     * 查找处理请求的处理器：精确匹配的路由、405、默认处理器，最后是404
+     */
+    private RouteHandler resolve(HttpRequest request) {
         HttpMethod method = request.getMethod();
         String path = request.getPath();
 
@@ -77,34 +149,24 @@ public class Router {
         if (methodRoutes != null) {
             RouteHandler handler = methodRoutes.get(path);
             if (handler != null) {
-                try {
-                    return handler.handle(request);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return ResponseBuilder.internalServerError(e.getMessage());
-                }
+                return handler;
             }
         }
 
         // 检查其他方法是否有这个路径（用于返回405）
         for (HttpMethod m : HttpMethod.values()) {
             if (m != method && routes.get(m).containsKey(path)) {
-                return ResponseBuilder.methodNotAllowed();
+                return METHOD_NOT_ALLOWED;
             }
         }
 
         // 使用默认处理器（静态文件服务）
         if (defaultHandler != null) {
-            try {
-                return defaultHandler.handle(request);
-            } catch (Exception e) {
-                e.printStackTrace();
-                return ResponseBuilder.internalServerError(e.getMessage());
-            }
+            return defaultHandler;
         }
 
         // 没有找到匹配的路由
-        return ResponseBuilder.notFound();
+        return NOT_FOUND;
     }
 
     /**